@@ -0,0 +1,595 @@
+package carrentalsystem.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Durable state for a RentalAgency: an append-only binary event log plus periodic snapshots.
+//
+// Files in the journal directory, per generation g:
+//   snapshot-g.bin  every event needed to rebuild the agency as of the roll to generation g
+//   events-g.log    events appended after that snapshot
+// Startup memory-maps the newest snapshot, replays it, then replays the tail of its log.
+//
+// Record layout (both files): int payloadLength, int crc32(payload), payload.
+// Payload: byte type, then fields. A torn or corrupt record at the end of the log (crash
+// mid-write) is detected by length/CRC and cut off on recovery.
+//
+// Appends are encoded into an in-memory buffer; a background thread writes and fsyncs
+// everything buffered so far in one go (group commit). With syncWrites each mutating call
+// waits until its own record is on disk, otherwise at most commitIntervalMillis of events
+// can be lost on a crash.
+class AgencyJournal implements AutoCloseable {
+    static final byte ADD_CAR = 1;
+    static final byte ADD_CUSTOMER = 2;
+    static final byte RENT = 3;
+    static final byte RETURN = 4;
+    static final byte RESERVE = 5;
+    static final byte CANCEL = 6;
+    static final byte REMOVE_CAR = 7;
+    static final byte RENTAL = 8; // snapshots only: one history row, by fleet id
+
+    private static final int SNAPSHOT_MAGIC = 0x52414753; // "RAGS"
+    private static final int HEADER = 8;
+
+    private final Path dir;
+    private final long commitIntervalMillis;
+    private final boolean syncWrites;
+    private final long snapshotEvery;
+
+    // Mutations hold the read side for their whole duration; snapshots take the write side
+    // so they see a state that matches the log exactly.
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    private final Object ioLock = new Object();     // orders writes to the log file
+    private final Object bufferLock = new Object(); // guards the in-memory batch
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+    private final CRC32 crc = new CRC32();
+    private long appendedSeq;
+    private long durableSeq;
+    private long eventsSinceSnapshot;
+    private IOException failure;
+    private boolean closed;
+
+    private long generation;
+    private FileChannel log;
+    private RentalAgency agency;
+    private Thread committer;
+
+    public AgencyJournal(Path dir) { this(dir, 5, false, 1_000_000); }
+
+    public AgencyJournal(Path dir, long commitIntervalMillis, boolean syncWrites, long snapshotEvery) {
+        this.dir = dir;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.syncWrites = syncWrites;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    // Rebuilds `agency` (which must be empty) from disk and starts journaling its changes.
+    // Returns the number of events replayed.
+    public long open(RentalAgency agency) throws IOException {
+        Files.createDirectories(dir);
+        generation = latestGeneration();
+        long replayed = 0;
+
+        Path snapshot = snapshotPath(generation);
+        if (Files.exists(snapshot)) {
+            try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                if (map.remaining() < HEADER || map.getInt() != SNAPSHOT_MAGIC)
+                    throw new IOException("Not a snapshot: " + snapshot);
+                long count = map.getInt() & 0xFFFFFFFFL;
+                for (long i = 0; i < count; i++) {
+                    ByteBuffer payload = nextRecord(map);
+                    if (payload == null) throw new IOException("Corrupt snapshot: " + snapshot);
+                    apply(agency, payload, snapshot, i + 1);
+                    replayed++;
+                }
+            }
+        }
+
+        log = FileChannel.open(logPath(generation), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = log.size();
+        if (size > 0) {
+            MappedByteBuffer map = log.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer payload;
+            try {
+                for (long seq = 1; (payload = nextRecord(map)) != null; seq++) {
+                    apply(agency, payload, logPath(generation), seq);
+                    replayed++;
+                    eventsSinceSnapshot++;
+                }
+            } catch (IOException e) {
+                log.close();
+                throw e;
+            }
+            if (map.position() < size) {
+                System.err.println("Journal: dropping " + (size - map.position()) +
+                                   " bytes of incomplete events from " + logPath(generation));
+                log.truncate(map.position());
+                log.force(true);
+            }
+        }
+        log.position(log.size());
+        deleteOlderGenerations();
+
+        this.agency = agency;
+        committer = new Thread(this::commitLoop, "agency-journal");
+        committer.setDaemon(true);
+        committer.start();
+        return replayed;
+    }
+
+    // Called by RentalAgency around every mutation. endWrite takes the sequence number
+    // returned by the log call (0 if nothing was logged) and, with syncWrites, waits for it to
+    // reach the disk after releasing the lock so a pending snapshot is never held up.
+    void beginWrite() { stateLock.readLock().lock(); }
+    void endWrite(long seq) {
+        stateLock.readLock().unlock();
+        if (syncWrites && seq > 0) awaitDurable(seq);
+    }
+
+    long logAddCar(Car car) { return encodeAddCar(this::append, car); }
+    long logAddCustomer(Customer customer) { return encodeAddCustomer(this::append, customer); }
+    long logRent(String regNo, String customerId, LocalDate date, int days, double cost) {
+        return encodeRent(this::append, regNo, customerId, date, days, cost);
+    }
+    long logReturn(String regNo, LocalDate date) { return encodeReturn(this::append, regNo, date); }
+    long logReserve(Reservation r) { return encodeReserve(this::append, r); }
+    long logCancel(Reservation r) { return encodeCancel(this::append, r); }
+    long logRemoveCar(String regNo) { return encodeRemoveCar(this::append, regNo); }
+
+    private interface Encoder { void encode(ByteBuffer b); }
+    private interface Sink { long emit(byte type, int bodyLength, Encoder encoder); }
+
+    private static long encodeAddCar(Sink out, Car car) {
+        byte[] reg = utf8(car.getRegistrationNumber());
+        byte[] model = utf8(car.getModel());
+        return out.emit(ADD_CAR, 1 + 2 + reg.length + 2 + model.length + 8, b -> {
+            b.put((byte) (car instanceof LuxuryCar ? 1 : 0));
+            putString(b, reg);
+            putString(b, model);
+            b.putDouble(car.getRentalPricePerDay());
+        });
+    }
+
+    private static long encodeAddCustomer(Sink out, Customer customer) {
+        byte[] id = utf8(customer.getCustomerId());
+        byte[] name = utf8(customer.getName());
+        byte[] contact = utf8(customer.getContactInfo());
+        return out.emit(ADD_CUSTOMER, 6 + id.length + name.length + contact.length + 1, b -> {
+            putString(b, id);
+            putString(b, name);
+            putString(b, contact);
+            b.put((byte) customer.getTier().ordinal());
+        });
+    }
+
+    private static long encodeRent(Sink out, String regNo, String customerId, LocalDate date, int days, double cost) {
+        byte[] reg = utf8(regNo);
+        byte[] customer = utf8(customerId);
+        return out.emit(RENT, 4 + reg.length + customer.length + 4 + 4 + 8, b -> {
+            putString(b, reg);
+            putString(b, customer);
+            b.putInt((int) date.toEpochDay());
+            b.putInt(days);
+            b.putDouble(cost);
+        });
+    }
+
+    private static long encodeReturn(Sink out, String regNo, LocalDate date) {
+        byte[] reg = utf8(regNo);
+        return out.emit(RETURN, 2 + reg.length + 4, b -> {
+            putString(b, reg);
+            b.putInt((int) date.toEpochDay());
+        });
+    }
+
+    private static long encodeReserve(Sink out, Reservation r) {
+        byte[] reg = utf8(r.getRegistrationNumber());
+        byte[] customer = utf8(r.getCustomerId());
+        return out.emit(RESERVE, 4 + reg.length + customer.length + 8, b -> {
+            putString(b, reg);
+            putString(b, customer);
+            b.putInt((int) r.getFrom().toEpochDay());
+            b.putInt((int) r.getTo().toEpochDay());
+        });
+    }
+
+    private static long encodeCancel(Sink out, Reservation r) {
+        byte[] reg = utf8(r.getRegistrationNumber());
+        return out.emit(CANCEL, 2 + reg.length + 4, b -> {
+            putString(b, reg);
+            b.putInt((int) r.getFrom().toEpochDay());
+        });
+    }
+
+    // Names the car by fleet id rather than registration number: a snapshot lists every car
+    // the fleet has held in id order, and a number may have been reused after a removal
+    private static long encodeRental(Sink out, RentalTransaction t) {
+        byte[] customer = utf8(t.getCustomer().getCustomerId());
+        LocalDate returned = t.getReturnDate();
+        return out.emit(RENTAL, 4 + 2 + customer.length + 4 + 4 + 8 + 4, b -> {
+            b.putInt(t.getCar().getFleetId());
+            putString(b, customer);
+            b.putInt((int) t.getRentalDate().toEpochDay());
+            b.putInt(t.getRentalDays());
+            b.putDouble(t.getTotalCost());
+            b.putInt(returned == null ? TransactionLog.NOT_RETURNED : (int) returned.toEpochDay());
+        });
+    }
+
+    private static long encodeRemoveCar(Sink out, String regNo) {
+        byte[] reg = utf8(regNo);
+        return out.emit(REMOVE_CAR, 2 + reg.length, b -> putString(b, reg));
+    }
+
+    // Frames one record (length, crc, type, body) at the buffer's position
+    private static ByteBuffer frame(ByteBuffer b, CRC32 crc, byte type, int bodyLength, Encoder encoder) {
+        int payloadLength = 1 + bodyLength;
+        b = ensureRoom(b, 8 + payloadLength);
+        int start = b.position();
+        b.putInt(payloadLength).putInt(0).put(type);
+        encoder.encode(b);
+        crc.reset();
+        crc.update(b.array(), start + 8, payloadLength);
+        b.putInt(start + 4, (int) crc.getValue());
+        return b;
+    }
+
+    private long append(byte type, int bodyLength, Encoder encoder) {
+        synchronized (bufferLock) {
+            if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+            if (closed) throw new IllegalStateException("Journal is closed");
+            pending = frame(pending, crc, type, bodyLength, encoder);
+            eventsSinceSnapshot++;
+            bufferLock.notifyAll();
+            return ++appendedSeq;
+        }
+    }
+
+    private void awaitDurable(long seq) {
+        synchronized (bufferLock) {
+            while (durableSeq < seq && failure == null) {
+                try {
+                    bufferLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+        }
+    }
+
+    // Blocks until everything appended so far is on disk
+    public void sync() {
+        long seq;
+        synchronized (bufferLock) { seq = appendedSeq; }
+        awaitDurable(seq);
+    }
+
+    private void commitLoop() {
+        while (true) {
+            synchronized (bufferLock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        bufferLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0 && closed) return;
+            }
+            try {
+                boolean snapshotDue;
+                synchronized (ioLock) {
+                    snapshotDue = flush();
+                }
+                if (snapshotDue) snapshot();
+                if (commitIntervalMillis > 0) Thread.sleep(commitIntervalMillis);
+            } catch (IOException e) {
+                synchronized (bufferLock) {
+                    failure = e;
+                    bufferLock.notifyAll();
+                }
+                e.printStackTrace();
+                return;
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Writes and fsyncs everything buffered so far as one batch. Caller holds ioLock.
+    // Returns true when enough events have piled up since the last snapshot.
+    private boolean flush() throws IOException {
+        ByteBuffer batch;
+        long batchSeq;
+        boolean snapshotDue;
+        synchronized (bufferLock) {
+            batch = pending;
+            pending = spare;
+            spare = batch;
+            batchSeq = appendedSeq;
+            snapshotDue = eventsSinceSnapshot >= snapshotEvery;
+        }
+        if (batch.position() > 0) {
+            batch.flip();
+            while (batch.hasRemaining()) log.write(batch);
+            log.force(false);
+            batch.clear();
+        }
+        synchronized (bufferLock) {
+            durableSeq = Math.max(durableSeq, batchSeq);
+            bufferLock.notifyAll();
+        }
+        return snapshotDue;
+    }
+
+    // Writes a fresh snapshot and starts a new, empty log generation. Mutations are paused
+    // while the snapshot is written.
+    public void snapshot() throws IOException {
+        stateLock.writeLock().lock();
+        try {
+            synchronized (ioLock) {
+                flush(); // nothing can append while we hold the write lock
+                long next = generation + 1;
+                Path tmp = dir.resolve("snapshot.tmp");
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    writeSnapshot(out);
+                    out.force(true);
+                }
+                Files.move(tmp, snapshotPath(next), StandardCopyOption.ATOMIC_MOVE);
+
+                FileChannel nextLog = FileChannel.open(logPath(next), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileChannel previous = log;
+                log = nextLog;
+                generation = next;
+                previous.close();
+                synchronized (bufferLock) { eventsSinceSnapshot = 0; }
+                deleteOlderGenerations();
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // The snapshot is the agency re-expressed as the shortest event sequence that rebuilds it
+    private void writeSnapshot(FileChannel out) throws IOException {
+        ByteBuffer[] buffer = { ByteBuffer.allocate(1 << 20) };
+        CRC32 snapshotCrc = new CRC32();
+        long[] count = {0};
+        Sink sink = (type, bodyLength, encoder) -> {
+            buffer[0] = frame(buffer[0], snapshotCrc, type, bodyLength, encoder);
+            if (buffer[0].position() > (1 << 20) - 4096) drain(out, buffer[0]);
+            return ++count[0];
+        };
+        try {
+            out.write(ByteBuffer.allocate(HEADER)); // patched below
+            agency.forEachSnapshotEvent(new SnapshotSink() {
+                public void car(Car car) { encodeAddCar(sink, car); }
+                public void customer(Customer c) { encodeAddCustomer(sink, c); }
+                public void rental(RentalTransaction t) { encodeRental(sink, t); }
+                public void reservation(Reservation r) { encodeReserve(sink, r); }
+                public void removedCar(String regNo) { encodeRemoveCar(sink, regNo); }
+            });
+            drain(out, buffer[0]);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(SNAPSHOT_MAGIC).putInt((int) count[0]);
+        header.flip();
+        out.write(header, 0);
+    }
+
+    private static void drain(FileChannel out, ByteBuffer b) {
+        try {
+            b.flip();
+            while (b.hasRemaining()) out.write(b);
+            b.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    interface SnapshotSink {
+        void car(Car car);
+        void customer(Customer customer);
+        void rental(RentalTransaction t);
+        void reservation(Reservation r);
+        void removedCar(String regNo);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (bufferLock) {
+            closed = true;
+            bufferLock.notifyAll();
+        }
+        if (committer != null) {
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (log != null) {
+            log.force(true);
+            log.close();
+        }
+    }
+
+    // Replay
+
+    private static ByteBuffer nextRecord(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < 8) return null;
+        int length = in.getInt();
+        int expected = in.getInt();
+        if (length <= 0 || length > in.remaining()) {
+            in.position(start);
+            return null;
+        }
+        ByteBuffer payload = in.slice();
+        payload.limit(length);
+        CRC32 check = new CRC32();
+        check.update(payload.duplicate());
+        if ((int) check.getValue() != expected) {
+            in.position(start);
+            return null;
+        }
+        in.position(in.position() + length);
+        return payload;
+    }
+
+    // A record that doesn't apply means the rebuilt agency would differ from the one that
+    // wrote it, so recovery stops there, naming the record's file and sequence number
+    private static void apply(RentalAgency agency, ByteBuffer b, Path file, long seq) throws IOException {
+        try {
+            apply(agency, b);
+        } catch (RuntimeException e) {
+            throw new IOException("Cannot replay event " + seq + " of " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void apply(RentalAgency agency, ByteBuffer b) {
+        byte type = b.get();
+        switch (type) {
+            case ADD_CAR: {
+                boolean luxury = b.get() == 1;
+                String reg = getString(b);
+                String model = getString(b);
+                double price = b.getDouble();
+                agency.addCar(luxury ? new LuxuryCar(reg, model, price) : new Car(reg, model, price) {});
+                break;
+            }
+            case ADD_CUSTOMER:
+                agency.addCustomer(new Customer(getString(b), getString(b), getString(b),
+                        CustomerTier.values()[b.get()]));
+                break;
+            case RENT: {
+                String reg = getString(b);
+                String customer = getString(b);
+                LocalDate date = LocalDate.ofEpochDay(b.getInt());
+                int days = b.getInt();
+                if (agency.rentCar(reg, customer, days, date, b.getDouble()) == null)
+                    throw new IllegalStateException("Cannot rent " + reg + " to " + customer + " on " + date);
+                break;
+            }
+            case RETURN: {
+                String reg = getString(b);
+                if (!agency.returnCar(reg, LocalDate.ofEpochDay(b.getInt())))
+                    throw new IllegalStateException("Cannot return " + reg + ": not rented");
+                break;
+            }
+            case RESERVE: {
+                String reg = getString(b);
+                String customer = getString(b);
+                LocalDate from = LocalDate.ofEpochDay(b.getInt());
+                LocalDate to = LocalDate.ofEpochDay(b.getInt());
+                if (agency.reserveCar(reg, customer, from, to) == null)
+                    throw new IllegalStateException("Cannot reserve " + reg + " for " + customer + " " + from + " to " + to);
+                break;
+            }
+            case CANCEL:
+                // May find nothing: a booking that has ended since is dropped on replay too
+                agency.cancelReservation(getString(b), LocalDate.ofEpochDay(b.getInt()));
+                break;
+            case REMOVE_CAR: {
+                String reg = getString(b);
+                if (agency.removeCar(reg) == null) throw new IllegalStateException("Cannot remove " + reg);
+                break;
+            }
+            case RENTAL: {
+                int fleetId = b.getInt();
+                String customer = getString(b);
+                LocalDate date = LocalDate.ofEpochDay(b.getInt());
+                int days = b.getInt();
+                double cost = b.getDouble();
+                int returned = b.getInt();
+                if (!agency.restoreRental(fleetId, customer, date, days, cost,
+                        returned == TransactionLog.NOT_RETURNED ? null : LocalDate.ofEpochDay(returned)))
+                    throw new IllegalStateException("Cannot restore rental of car #" + fleetId + " by " + customer);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal event type " + type);
+        }
+    }
+
+    // Helpers
+
+    private static ByteBuffer ensureRoom(ByteBuffer b, int needed) {
+        if (b.remaining() >= needed) return b;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(b.capacity() * 2, b.position() + needed));
+        b.flip();
+        return grown.put(b);
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IllegalArgumentException("String too long for journal: " + s.length());
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer b, byte[] bytes) {
+        b.putShort((short) bytes.length);
+        b.put(bytes);
+    }
+
+    private static String getString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getShort() & 0xFFFF];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path snapshotPath(long g) { return dir.resolve("snapshot-" + g + ".bin"); }
+    private Path logPath(long g) { return dir.resolve("events-" + g + ".log"); }
+
+    private long latestGeneration() throws IOException {
+        long latest = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (name.startsWith("snapshot-") && name.endsWith(".bin")) {
+                    long g = generationOf(name, 9, 4);
+                    if (g != Long.MAX_VALUE) latest = Math.max(latest, g);
+                }
+            }
+        }
+        return latest;
+    }
+
+    private void deleteOlderGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                long g = name.startsWith("snapshot-") && name.endsWith(".bin") ? generationOf(name, 9, 4)
+                       : name.startsWith("events-") && name.endsWith(".log") ? generationOf(name, 7, 4)
+                       : name.equals("snapshot.tmp") ? -1 : Long.MAX_VALUE;
+                if (g < generation) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static long generationOf(String name, int prefix, int suffix) {
+        try {
+            return Long.parseLong(name.substring(prefix, name.length() - suffix));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import metrics.Metrics;
+
+// Outcome of AuthService.login
+enum LoginResult { SUCCESS, INVALID, THROTTLED }
+
+// Authentication for many users. Lookups go through a concurrent map, so any number of
+// threads can call validate at once without a global lock; the only shared bottleneck is
+// the hashing pool, which is bounded on purpose (see PasswordHasher).
+//
+// login also rate-limits attempts per username and per client source, before any hashing,
+// so a credential-stuffing flood is turned away cheaply.
+class AuthService {
+    // Every credential check, unknown usernames included; failed logins count as failures
+    private static final Metrics.Timer VALIDATE_TIMER = Metrics.timer("login.validate");
+
+    private final UserStore users;
+    private final PasswordHasher hasher;
+    private final Map<Integer, String> unknownUserHashes = new ConcurrentHashMap<>(); // by cost
+    private volatile RateLimiter perUser = new RateLimiter(5, 1.0 / 60, 1_000_000);
+    private volatile RateLimiter perSource = new RateLimiter(50, 1, 100_000);
+
+    public AuthService(UserStore users) {
+        this(users, PasswordHasher.getDefault());
+    }
+
+    public AuthService(UserStore users, PasswordHasher hasher) {
+        this.users = users;
+        this.hasher = hasher;
+        unknownUserHash(); // made now rather than on the first unknown name, which would stand out
+    }
+
+    public boolean validate(String username, String password) {
+        long start = VALIDATE_TIMER.start();
+        boolean valid = false;
+        try {
+            return valid = check(username, password);
+        } finally {
+            VALIDATE_TIMER.stop(start, valid);
+        }
+    }
+
+    private boolean check(String username, String password) {
+        if (username == null || password == null) return false;
+        User user = users.get(username);
+        if (user == null) {
+            hasher.verify("", password, unknownUserHash());
+            return false;
+        }
+        return user.validate(username, password, hasher);
+    }
+
+    // Unknown usernames are checked against this, so they cost as much as a wrong password
+    // for a typical stored user: it is hashed at the cost most stored hashes use, which
+    // after raising the hasher's cost is still the old one until users are re-hashed
+    private String unknownUserHash() {
+        int cost = users.mostCommonIterations();
+        if (cost <= 0) cost = hasher.getIterations();
+        return unknownUserHashes.computeIfAbsent(cost, c -> hasher.hash("unknown user", c));
+    }
+
+    // Checks the rate limits, then the credentials. A successful login clears the
+    // username's failures; the source keeps its budget so it can't be used to spray guesses.
+    public LoginResult login(String username, String password, String source) {
+        if (username == null || password == null) return LoginResult.INVALID;
+        if (!perSource.tryAcquire(source) || !perUser.tryAcquire(username)) return LoginResult.THROTTLED;
+        if (!validate(username, password)) return LoginResult.INVALID;
+        perUser.reset(username);
+        return LoginResult.SUCCESS;
+    }
+
+    // Milliseconds until `username` from `source` may try again
+    public long retryAfterMillis(String username, String source) {
+        return Math.max(perUser.millisUntilAvailable(username), perSource.millisUntilAvailable(source));
+    }
+
+    public void setRateLimits(RateLimiter perUser, RateLimiter perSource) {
+        this.perUser = perUser;
+        this.perSource = perSource;
+    }
+
+    // Returns false if the username is taken
+    public boolean register(String username, String password) {
+        return users.add(new User(username, password, hasher));
+    }
+
+    public UserStore getUsers() { return users; }
+
+    public PasswordHasher getHasher() { return hasher; }
+}
+
+// Users by username. The file format is one "username:hash" line per user (lines starting
+// with # are ignored), written by save and read back by load.
+class UserStore {
+    private final ConcurrentHashMap<String, User> users;
+    private final ConcurrentHashMap<Integer, AtomicInteger> iterations = new ConcurrentHashMap<>(); // users per hash cost
+
+    public UserStore() { this(16); }
+
+    public UserStore(int expectedUsers) {
+        users = new ConcurrentHashMap<>(Math.max(16, expectedUsers * 4 / 3 + 1));
+    }
+
+    public static UserStore load(Path file) throws IOException {
+        UserStore store = new UserStore();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int sep = line.indexOf(':');
+                if (sep <= 0) throw new IOException(file + ":" + lineNo + ": expected username:hash");
+                store.add(User.withHash(line.substring(0, sep), line.substring(sep + 1)));
+            }
+        }
+        return store;
+    }
+
+    // Writes to a temporary file first so a crash never leaves a half-written user file
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (User user : users.values()) {
+                out.write(user.getUsername());
+                out.write(':');
+                out.write(user.getPasswordHash());
+                out.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public boolean add(User user) {
+        if (user.getUsername().indexOf(':') >= 0) throw new IllegalArgumentException("Username may not contain ':'");
+        if (users.putIfAbsent(user.getUsername(), user) != null) return false;
+        iterations.computeIfAbsent(PasswordHasher.iterationsOf(user.getPasswordHash()), c -> new AtomicInteger()).incrementAndGet();
+        return true;
+    }
+
+    public User get(String username) { return users.get(username); }
+
+    public boolean remove(String username) {
+        User user = users.remove(username);
+        if (user == null) return false;
+        iterations.get(PasswordHasher.iterationsOf(user.getPasswordHash())).decrementAndGet();
+        return true;
+    }
+
+    // The PBKDF2 cost most users' hashes were made with, or -1 if there are none
+    public int mostCommonIterations() {
+        int best = -1, count = 0;
+        for (Map.Entry<Integer, AtomicInteger> e : iterations.entrySet()) {
+            int n = e.getValue().get();
+            if (e.getKey() > 0 && n > count) {
+                best = e.getKey();
+                count = n;
+            }
+        }
+        return best;
+    }
+
+    public int size() { return users.size(); }
+}
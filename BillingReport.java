@@ -0,0 +1,236 @@
+package carrentalsystem.java;
+
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Revenue report over the whole rental history: per day (of rental), per model, per customer
+// and per car class. The log's columns are first copied out with dictionary encoded keys,
+// then summed by a fork-join pass over row ranges; each leaf sums into its own
+// small arrays that are merged on the way up, except for customers, whose key space can be
+// huge and is accumulated straight into one shared atomic array.
+class BillingReport {
+    static final String[] CLASSES = { "Standard", "Luxury" };
+
+    private final int rows;
+    private final int firstDay;
+    private final long[] dayCents;
+    private final int[] dayCounts;
+    private final String[] models;
+    private final long[] modelCents;
+    private final Customer[] customers;
+    private final long[] customerCents;
+    private final long[] classCents;
+
+    private BillingReport(int rows, int firstDay, long[] dayCents, int[] dayCounts, String[] models, long[] modelCents,
+                          Customer[] customers, long[] customerCents, long[] classCents) {
+        this.rows = rows;
+        this.firstDay = firstDay;
+        this.dayCents = dayCents;
+        this.dayCounts = dayCounts;
+        this.models = models;
+        this.modelCents = modelCents;
+        this.customers = customers;
+        this.customerCents = customerCents;
+        this.classCents = classCents;
+    }
+
+    public static BillingReport compute(TransactionLog log) {
+        return compute(Columns.of(log), ForkJoinPool.commonPool());
+    }
+
+    static BillingReport compute(Columns c, ForkJoinPool pool) {
+        int days = c.rows == 0 ? 0 : c.lastDay - c.firstDay + 1;
+        AtomicLongArray perCustomer = new AtomicLongArray(c.customers.length);
+        Totals totals = new Totals(days, c.models.length);
+        int leaf = Math.max(1 << 16, c.rows / (pool.getParallelism() * 4 + 1));
+        pool.invoke(new Summer(c, 0, c.rows, leaf, totals, perCustomer));
+
+        long[] customerCents = new long[perCustomer.length()];
+        for (int i = 0; i < customerCents.length; i++) customerCents[i] = perCustomer.get(i);
+        return new BillingReport(c.rows, c.firstDay, totals.dayCents, totals.dayCounts, c.models,
+                totals.modelCents, c.customers, customerCents, totals.classCents);
+    }
+
+    public int getTransactionCount() { return rows; }
+
+    public long getTotalCents() { return classCents[0] + classCents[1]; }
+
+    public SortedMap<LocalDate, Long> getRevenuePerDay() {
+        SortedMap<LocalDate, Long> result = new TreeMap<>();
+        for (int d = 0; d < dayCents.length; d++)
+            if (dayCounts[d] > 0) result.put(LocalDate.ofEpochDay(firstDay + d), dayCents[d]);
+        return result;
+    }
+
+    public Map<String, Long> getRevenuePerModel() { return toMap(models, modelCents); }
+
+    public Map<String, Long> getRevenuePerClass() { return toMap(CLASSES, classCents); }
+
+    public Map<String, Long> getRevenuePerCustomer() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < customers.length; i++)
+            if (customerCents[i] != 0) result.merge(customers[i].getCustomerId(), customerCents[i], Long::sum);
+        return result;
+    }
+
+    private static Map<String, Long> toMap(String[] keys, long[] cents) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) if (cents[i] != 0) result.put(keys[i], cents[i]);
+        return result;
+    }
+
+    // End-of-day style text report; per-customer lines are limited to the top `topCustomers`
+    public void print(PrintStream out, int topCustomers) {
+        out.printf("Rentals: %,d  Revenue: $%s%n", rows, money(getTotalCents()));
+        out.println("\nRevenue per day:");
+        getRevenuePerDay().forEach((day, cents) -> out.println("  " + day + "  $" + money(cents)));
+        out.println("\nRevenue per model:");
+        getRevenuePerModel().forEach((model, cents) -> out.println("  " + model + "  $" + money(cents)));
+        out.println("\nRevenue per class:");
+        getRevenuePerClass().forEach((cls, cents) -> out.println("  " + cls + "  $" + money(cents)));
+
+        Integer[] order = new Integer[customers.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(customerCents[b], customerCents[a]));
+        out.println("\nTop customers:");
+        for (int i = 0; i < Math.min(topCustomers, order.length); i++)
+            out.println("  " + customers[order[i]] + "  $" + money(customerCents[order[i]]));
+    }
+
+    // The sign goes in front on its own: cents / 100 is 0 from -99 to 99, so -50 would
+    // otherwise print as 0.50
+    static String money(long cents) {
+        return String.format("%s%d.%02d", cents < 0 ? "-" : "", Math.abs(cents / 100), Math.abs(cents % 100));
+    }
+
+    // History flattened into primitive columns; keys are indexes into the dictionaries
+    static final class Columns {
+        int rows;
+        int[] day;
+        int[] model;
+        int[] customer;
+        byte[] carClass;
+        long[] cents;
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        String[] models;
+        Customer[] customers;
+
+        // The log already stores rentals as columns, so this is mostly bulk array copies; only
+        // the car column is translated, through per-car lookup tables
+        static Columns of(TransactionLog log) {
+            int n = log.size();
+            Columns c = new Columns();
+            c.rows = n;
+            c.day = new int[n];
+            c.model = new int[n];
+            c.customer = new int[n];
+            c.carClass = new byte[n];
+            c.cents = new long[n];
+            log.copyColumn(TransactionLog.Column.RENTAL_DAY, 0, n, c.day, 0);
+            log.copyColumn(TransactionLog.Column.CAR, 0, n, c.model, 0);
+            log.copyColumn(TransactionLog.Column.CUSTOMER, 0, n, c.customer, 0);
+            log.copyCents(0, n, c.cents, 0);
+
+            FleetIndex fleet = log.getFleet();
+            int[] modelOfCar = new int[fleet.size()];
+            byte[] classOfCar = new byte[fleet.size()];
+            Map<String, Integer> modelIds = new HashMap<>();
+            for (int id = 0; id < modelOfCar.length; id++) {
+                Car car = fleet.get(id);
+                modelOfCar[id] = modelIds.computeIfAbsent(car.getModel(), m -> modelIds.size());
+                classOfCar[id] = (byte) (car instanceof LuxuryCar ? 1 : 0);
+            }
+            for (int i = 0; i < n; i++) {
+                int day = c.day[i];
+                if (day < c.firstDay) c.firstDay = day;
+                if (day > c.lastDay) c.lastDay = day;
+                int car = c.model[i];
+                c.model[i] = modelOfCar[car];
+                c.carClass[i] = classOfCar[car];
+            }
+            c.models = new String[modelIds.size()];
+            modelIds.forEach((m, id) -> c.models[id] = m);
+
+            CustomerDirectory directory = log.getCustomers();
+            c.customers = new Customer[directory.size()];
+            for (int i = 0; i < c.customers.length; i++) c.customers[i] = directory.get(i);
+            return c;
+        }
+    }
+
+    private static final class Totals {
+        final long[] dayCents;
+        final int[] dayCounts;
+        final long[] modelCents;
+        final long[] classCents = new long[CLASSES.length];
+
+        Totals(int days, int models) {
+            dayCents = new long[days];
+            dayCounts = new int[days];
+            modelCents = new long[models];
+        }
+
+        void add(Totals o) {
+            for (int i = 0; i < dayCents.length; i++) {
+                dayCents[i] += o.dayCents[i];
+                dayCounts[i] += o.dayCounts[i];
+            }
+            for (int i = 0; i < modelCents.length; i++) modelCents[i] += o.modelCents[i];
+            for (int i = 0; i < classCents.length; i++) classCents[i] += o.classCents[i];
+        }
+    }
+
+    private static final class Summer extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Columns c;
+        private final int from, to, leaf;
+        private final Totals into;
+        private final AtomicLongArray perCustomer;
+
+        Summer(Columns c, int from, int to, int leaf, Totals into, AtomicLongArray perCustomer) {
+            this.c = c;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.into = into;
+            this.perCustomer = perCustomer;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leaf) {
+                sum(into);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            Totals right = new Totals(into.dayCents.length, into.modelCents.length);
+            Summer r = new Summer(c, mid, to, leaf, right, perCustomer);
+            r.fork();
+            new Summer(c, from, mid, leaf, into, perCustomer).compute();
+            r.join();
+            into.add(right);
+        }
+
+        private void sum(Totals t) {
+            int[] day = c.day, model = c.model, customer = c.customer;
+            byte[] carClass = c.carClass;
+            long[] cents = c.cents;
+            int firstDay = c.firstDay;
+            for (int i = from; i < to; i++) {
+                long v = cents[i];
+                int d = day[i] - firstDay;
+                t.dayCents[d] += v;
+                t.dayCounts[d]++;
+                t.modelCents[model[i]] += v;
+                t.classCents[carClass[i]] += v;
+                perCustomer.getAndAdd(customer[i], v);
+            }
+        }
+    }
+}
@@ -1,27 +1,44 @@
 package carrentalsystem.java;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjDoubleConsumer;
+import metrics.Metrics;
 
 // Abstract Car class (Abstraction, Encapsulation)
 abstract class Car {
     private String registrationNumber;
     private String model;
-    private boolean available;
+    private final AtomicBoolean available;
     private double rentalPricePerDay;
+    private int fleetId = -1;
 
     public Car(String registrationNumber, String model, double rentalPricePerDay) {
         this.registrationNumber = registrationNumber;
         this.model = model;
-        this.available = true;
+        this.available = new AtomicBoolean(true);
         this.rentalPricePerDay = rentalPricePerDay;
     }
 
     public String getRegistrationNumber() { return registrationNumber; }
     public String getModel() { return model; }
-    public boolean isAvailable() { return available; }
-    public void setAvailable(boolean available) { this.available = available; }
+    public boolean isAvailable() { return available.get(); }
+    public void setAvailable(boolean available) { this.available.set(available); }
+    // Atomically takes the car out of the pool; only one concurrent caller can win
+    public boolean tryRent() { return available.compareAndSet(true, false); }
     public double getRentalPricePerDay() { return rentalPricePerDay; }
+    // Dense id assigned by the FleetIndex when the car joins an agency
+    public int getFleetId() { return fleetId; }
+    void assignFleetId(int fleetId) {
+        if (this.fleetId >= 0) throw new IllegalStateException(registrationNumber + " already belongs to a fleet");
+        this.fleetId = fleetId;
+    }
 
     // Polymorphic method
     public double calculateRentalCost(int days) {
@@ -30,7 +47,7 @@ abstract class Car {
 
     @Override
     public String toString() {
-        return model + " [" + registrationNumber + "] - " + (available ? "Available" : "Rented");
+        return model + " [" + registrationNumber + "] - " + (isAvailable() ? "Available" : "Rented");
     }
 }
 
@@ -51,22 +68,103 @@ class Customer {
     private String customerId;
     private String name;
     private String contactInfo;
-    private List<RentalTransaction> rentalHistory;
+    private CustomerTier tier;
+    private int index = -1;
+
+    // Rental history is a chain of rows in the agency's TransactionLog
+    private TransactionLog history;
+    private int firstRow = TransactionLog.NO_ROW;
+    private int lastRow = TransactionLog.NO_ROW;
+    private volatile int historySize;
 
     public Customer(String customerId, String name, String contactInfo) {
+        this(customerId, name, contactInfo, CustomerTier.STANDARD);
+    }
+
+    public Customer(String customerId, String name, String contactInfo, CustomerTier tier) {
         this.customerId = customerId;
         this.name = name;
         this.contactInfo = contactInfo;
-        this.rentalHistory = new ArrayList<>();
+        this.tier = tier;
     }
 
     public String getCustomerId() { return customerId; }
     public String getName() { return name; }
     public String getContactInfo() { return contactInfo; }
+    public CustomerTier getTier() { return tier; }
+
+    // Dense index assigned when the customer joins an agency
+    public int getIndex() { return index; }
+    void assignIndex(int index) {
+        if (this.index >= 0) throw new IllegalStateException(customerId + " already belongs to an agency");
+        this.index = index;
+    }
+
+    // Lazy read-only view over the shared transaction columns, oldest first. Iterating is
+    // cheap; get(i) walks the chain, so prefer iteration. The view may include a row the log
+    // hasn't published yet (an earlier writer is still in flight); that's fine, because every
+    // row in the chain was fully written before addTransaction linked it.
+    public List<RentalTransaction> getRentalHistory() {
+        int size;
+        int first;
+        TransactionLog log;
+        synchronized (this) {
+            size = historySize;
+            first = firstRow;
+            log = history;
+        }
+        return new HistoryView(log, first, size);
+    }
+
+    public int getRentalCount() { return historySize; }
+
+    public synchronized void addTransaction(RentalTransaction transaction) {
+        int row = transaction.getRow();
+        if (history == null) history = transaction.getLog();
+        if (lastRow == TransactionLog.NO_ROW) firstRow = row;
+        else history.linkNextForCustomer(lastRow, row);
+        lastRow = row;
+        historySize++;
+    }
+
+    private static final class HistoryView extends AbstractList<RentalTransaction> {
+        private final TransactionLog log;
+        private final int first;
+        private final int size;
+
+        HistoryView(TransactionLog log, int first, int size) {
+            this.log = log;
+            this.first = first;
+            this.size = size;
+        }
+
+        @Override
+        public RentalTransaction get(int i) {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i);
+            int row = first;
+            while (i-- > 0) row = log.nextForCustomer(row);
+            return new RentalTransaction(log, row);
+        }
 
-    public List<RentalTransaction> getRentalHistory() { return rentalHistory; }
-    public void addTransaction(RentalTransaction transaction) {
-        rentalHistory.add(transaction);
+        @Override
+        public Iterator<RentalTransaction> iterator() {
+            return new Iterator<RentalTransaction>() {
+                int row = first;
+                int remaining = size;
+
+                public boolean hasNext() { return remaining > 0; }
+
+                public RentalTransaction next() {
+                    if (remaining == 0) throw new NoSuchElementException();
+                    RentalTransaction t = new RentalTransaction(log, row);
+                    if (--remaining > 0) row = log.nextForCustomer(row);
+                    return t;
+                }
+            };
+        }
+
+        @Override
+        public int size() { return size; }
     }
 
     @Override
@@ -76,94 +174,407 @@ class Customer {
 }
 
 // Rental Transaction (Encapsulation)
+// A lightweight handle on one row of the agency's TransactionLog; the data itself lives in
+// the log's primitive columns. Two handles on the same row are equal.
 class RentalTransaction {
-    private Car car;
-    private Customer customer;
-    private LocalDate rentalDate;
-    private LocalDate returnDate;
-    private boolean active;
-    private double totalCost;
-
-    public RentalTransaction(Car car, Customer customer, LocalDate rentalDate, int rentalDays) {
-        this.car = car;
-        this.customer = customer;
-        this.rentalDate = rentalDate;
-        this.returnDate = null;
-        this.active = true;
-        this.totalCost = car.calculateRentalCost(rentalDays);
+    private final TransactionLog log;
+    private final int row;
+
+    RentalTransaction(TransactionLog log, int row) {
+        this.log = log;
+        this.row = row;
     }
 
     public void closeTransaction(LocalDate returnDate) {
-        this.returnDate = returnDate;
-        this.active = false;
-        car.setAvailable(true);
+        log.close(row, returnDate);
+        getCar().setAvailable(true);
+    }
+
+    public Car getCar() { return log.car(row); }
+    public Customer getCustomer() { return log.customer(row); }
+    public LocalDate getRentalDate() { return LocalDate.ofEpochDay(log.rentalDay(row)); }
+    public int getRentalDays() { return log.days(row); }
+    public LocalDate getReturnDate() {
+        int day = log.returnDay(row);
+        return day == TransactionLog.NOT_RETURNED ? null : LocalDate.ofEpochDay(day);
     }
+    public boolean isActive() { return log.returnDay(row) == TransactionLog.NOT_RETURNED; }
+    public double getTotalCost() { return log.cents(row) / 100.0; }
+    // Position in the agency's transaction history
+    public int getRow() { return row; }
+    TransactionLog getLog() { return log; }
 
-    public Car getCar() { return car; }
-    public Customer getCustomer() { return customer; }
-    public LocalDate getRentalDate() { return rentalDate; }
-    public LocalDate getReturnDate() { return returnDate; }
-    public boolean isActive() { return active; }
-    public double getTotalCost() { return totalCost; }
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RentalTransaction && ((RentalTransaction) o).log == log && ((RentalTransaction) o).row == row;
+    }
+
+    @Override
+    public int hashCode() { return row; }
 
     @Override
     public String toString() {
-        return "Rental: " + car + " by " + customer + " from " + rentalDate +
+        LocalDate returnDate = getReturnDate();
+        return "Rental: " + getCar() + " by " + getCustomer() + " from " + getRentalDate() +
                (returnDate != null ? " to " + returnDate : "") +
-               " | Cost: $" + String.format("%.2f", totalCost) +
-               " | " + (active ? "Active" : "Closed");
+               " | Cost: $" + String.format("%.2f", getTotalCost()) +
+               " | " + (returnDate == null ? "Active" : "Closed");
     }
 }
 
 // Rental Agency (System Manager)
+// Safe for concurrent use: rent/return on different cars never contend, and a car can only
+// be rented by whoever wins Car.tryRent().
 class RentalAgency {
     private Map<String, Car> cars;
     private Map<String, Customer> customers;
-    private List<RentalTransaction> transactions;
+    private TransactionLog transactions;
+    private FleetIndex fleet;
+    private CustomerDirectory customerDirectory;
+    private ReservationBook reservations;
+
+    // Active rentals only, so returns don't depend on how much history has piled up
+    private Map<String, RentalTransaction> activeByCar;
+    private Map<String, Map<String, RentalTransaction>> activeByCustomer;
+
+    // Set when the agency is persistent (see open); every mutation is logged to it
+    private AgencyJournal journal;
+    private volatile PricingEngine pricing = PricingEngine.FLAT;
+
+    // Sampled, as these take well under a microsecond; calls that rent or return nothing
+    // count as failures
+    private static final Metrics.Timer RENT_TIMER = Metrics.timer("rental.rentCar", 64);
+    private static final Metrics.Timer RETURN_TIMER = Metrics.timer("rental.returnCar", 64);
 
     public RentalAgency() {
-        this.cars = new HashMap<>();
-        this.customers = new HashMap<>();
-        this.transactions = new ArrayList<>();
+        this.cars = new ConcurrentHashMap<>();
+        this.customers = new ConcurrentHashMap<>();
+        this.fleet = new FleetIndex();
+        this.customerDirectory = new CustomerDirectory();
+        this.transactions = new TransactionLog(fleet, customerDirectory);
+        this.reservations = new ReservationBook(this::fleetIdOf);
+        this.activeByCar = new ConcurrentHashMap<>();
+        this.activeByCustomer = new ConcurrentHashMap<>();
+    }
+
+    // Loads the agency stored in `dir` (empty if there is none) and keeps it there
+    public static RentalAgency open(Path dir) throws IOException {
+        return open(new AgencyJournal(dir));
+    }
+
+    public static RentalAgency open(AgencyJournal journal) throws IOException {
+        RentalAgency agency = new RentalAgency();
+        journal.open(agency);
+        agency.journal = journal;
+        return agency;
+    }
+
+    // Writes a snapshot so the next startup only has to replay what happens after it
+    public void snapshot() throws IOException {
+        if (journal != null) journal.snapshot();
+    }
+
+    public void close() throws IOException {
+        if (journal != null) journal.close();
     }
 
     // Car management
-    public void addCar(Car car) { cars.put(car.getRegistrationNumber(), car); }
+    public void addCar(Car car) {
+        AgencyJournal j = journal;
+        long seq = 0;
+        if (j != null) j.beginWrite();
+        try {
+            synchronized (fleet) {
+                // Its fleet id would point into the other agency's columns
+                if (car.getFleetId() >= 0)
+                    throw new IllegalStateException(car.getRegistrationNumber() + " already belongs to an agency");
+                if (j != null) seq = j.logAddCar(car);
+                fleet.add(car);
+                Car previous = cars.put(car.getRegistrationNumber(), car);
+                if (previous != null) {
+                    fleet.remove(previous);
+                    reservations.reindex(car.getRegistrationNumber());
+                }
+            }
+        } finally {
+            if (j != null) j.endWrite(seq);
+        }
+    }
+    // Takes a car out of the agency, e.g. to move it to another branch; only while it is
+    // available with nothing booked, otherwise returns null. Its past rentals stay in the
+    // history.
+    public Car removeCar(String regNo) {
+        AgencyJournal j = journal;
+        long seq = 0;
+        if (j != null) j.beginWrite();
+        try {
+            synchronized (fleet) {
+                Car car = cars.get(regNo);
+                // Claiming it first makes a racing rentCar fail instead of renting a removed car
+                if (car == null || !car.tryRent()) return null;
+                if (!reservations.getReservations(regNo).isEmpty()) {
+                    car.setAvailable(true);
+                    return null;
+                }
+                try {
+                    if (j != null) seq = j.logRemoveCar(regNo);
+                } catch (RuntimeException e) {
+                    car.setAvailable(true);
+                    throw e;
+                }
+                cars.remove(regNo);
+                fleet.remove(car);
+                return car;
+            }
+        } finally {
+            if (j != null) j.endWrite(seq);
+        }
+    }
     public Car findCar(String regNo) { return cars.get(regNo); }
-    public List<Car> getAvailableCars() {
-        List<Car> available = new ArrayList<>();
-        for (Car car : cars.values()) if (car.isAvailable()) available.add(car);
-        return available;
+    private int fleetIdOf(String regNo) {
+        Car car = cars.get(regNo);
+        return car == null ? -1 : car.getFleetId();
     }
+    public List<Car> getAvailableCars() { return fleet.list(FleetQuery.available()); }
+    // Bitmap-backed queries, e.g. findCars(FleetQuery.available().luxury(true).maxPricePerDay(120))
+    public List<Car> findCars(FleetQuery query) { return fleet.list(query); }
+    public FleetIndex getFleet() { return fleet; }
 
     // Customer management
-    public void addCustomer(Customer customer) { customers.put(customer.getCustomerId(), customer); }
+    public void addCustomer(Customer customer) {
+        AgencyJournal j = journal;
+        long seq = 0;
+        if (j != null) j.beginWrite();
+        try {
+            synchronized (customerDirectory) {
+                // Its index would point into the other agency's columns; re-adding here is fine
+                int index = customer.getIndex();
+                if (index >= 0 && customerDirectory.get(index) != customer)
+                    throw new IllegalStateException(customer.getCustomerId() + " already belongs to another agency");
+                if (j != null) seq = j.logAddCustomer(customer);
+                if (index < 0) customerDirectory.add(customer);
+                customers.put(customer.getCustomerId(), customer);
+            }
+        } finally {
+            if (j != null) j.endWrite(seq);
+        }
+    }
     public Customer findCustomer(String customerId) { return customers.get(customerId); }
 
     // Rental operations
     public RentalTransaction rentCar(String regNo, String customerId, int days) {
-        Car car = findCar(regNo);
-        Customer customer = findCustomer(customerId);
-        if (car == null || !car.isAvailable() || customer == null) return null;
+        long start = RENT_TIMER.start();
+        RentalTransaction t = null;
+        try {
+            return t = rentCar(regNo, customerId, days, LocalDate.now(), Double.NaN);
+        } finally {
+            RENT_TIMER.stop(start, t != null);
+        }
+    }
 
-        car.setAvailable(false);
-        RentalTransaction t = new RentalTransaction(car, customer, LocalDate.now(), days);
-        transactions.add(t);
-        customer.addTransaction(t);
-        return t;
+    // `cost` is NaN unless the price is already known (journal replay)
+    RentalTransaction rentCar(String regNo, String customerId, int days, LocalDate date, double cost) {
+        AgencyJournal j = journal;
+        long seq = 0;
+        if (j != null) j.beginWrite();
+        try {
+            Car car = findCar(regNo);
+            Customer customer = findCustomer(customerId);
+            if (car == null || customer == null || !car.tryRent()) return null;
+            fleet.markRented(car);
+
+            // The rental holds its days in the car's calendar so it can't run into an advance
+            // booking; the customer's own booking for the car is picked up instead
+            Reservation booking = reservations.bookRental(regNo, customerId, date, date.plusDays(Math.max(days, 1)));
+            if (booking == null) {
+                fleet.markAvailable(car);
+                car.setAvailable(true);
+                return null;
+            }
+
+            // Logged before the rental becomes visible, so its return is always logged after it.
+            // If pricing or the journal fails, the car and its calendar go back as they were.
+            try {
+                if (Double.isNaN(cost)) cost = pricing.quote(car, customer.getTier(), date, days);
+                if (j != null) seq = j.logRent(regNo, customerId, date, days, cost);
+            } catch (RuntimeException e) {
+                reservations.unbookRental(booking);
+                fleet.markAvailable(car);
+                car.setAvailable(true);
+                throw e;
+            }
+            RentalTransaction t = transactions.append(car, customer, date, days, cost);
+            customer.addTransaction(t);
+            activeByCar.put(regNo, t);
+            activeByCustomer.computeIfAbsent(customerId, k -> new ConcurrentHashMap<>()).put(regNo, t);
+            return t;
+        } finally {
+            if (j != null) j.endWrite(seq);
+        }
     }
 
     public boolean returnCar(String regNo) {
-        for (RentalTransaction t : transactions) {
-            if (t.getCar().getRegistrationNumber().equals(regNo) && t.isActive()) {
-                t.closeTransaction(LocalDate.now());
-                return true;
+        long start = RETURN_TIMER.start();
+        boolean returned = false;
+        try {
+            return returned = returnCar(regNo, LocalDate.now());
+        } finally {
+            RETURN_TIMER.stop(start, returned);
+        }
+    }
+
+    boolean returnCar(String regNo, LocalDate date) {
+        AgencyJournal j = journal;
+        long seq = 0;
+        if (j != null) j.beginWrite();
+        try {
+            RentalTransaction t = activeByCar.remove(regNo);
+            if (t == null) return false;
+            if (j != null) {
+                try {
+                    seq = j.logReturn(regNo, date);
+                } catch (RuntimeException e) {
+                    activeByCar.put(regNo, t); // still out
+                    throw e;
+                }
+            }
+
+            Map<String, RentalTransaction> out = activeByCustomer.get(t.getCustomer().getCustomerId());
+            if (out != null) out.remove(regNo);
+            // Set the bit before the car is released so a racing rentCar's markRented lands after it
+            fleet.markAvailable(t.getCar());
+            reservations.releaseRental(regNo, t.getRentalDate());
+            t.closeTransaction(date);
+            return true;
+        } finally {
+            if (j != null) j.endWrite(seq);
+        }
+    }
+
+    public RentalTransaction findActiveRental(String regNo) { return activeByCar.get(regNo); }
+    public Collection<RentalTransaction> getActiveRentals(String customerId) {
+        Map<String, RentalTransaction> out = activeByCustomer.get(customerId);
+        return out == null ? Collections.emptyList() : Collections.unmodifiableCollection(out.values());
+    }
+
+    // Advance reservations over [from, to)
+    public Reservation reserveCar(String regNo, String customerId, LocalDate from, LocalDate to) {
+        if (findCustomer(customerId) == null) return null;
+        AgencyJournal j = journal;
+        long seq = 0;
+        if (j != null) j.beginWrite();
+        try {
+            // Under the fleet lock, like removeCar, so the car can't be removed between the
+            // check and the booking and leave a booking on a car that isn't there
+            synchronized (fleet) {
+                if (findCar(regNo) == null) return null;
+                // Journaled before it is booked, so a failed write leaves no booking behind
+                long[] logged = new long[1];
+                Reservation r = reservations.book(regNo, customerId, from, to, false,
+                        booked -> { if (j != null) logged[0] = j.logReserve(booked); });
+                seq = logged[0];
+                return r;
             }
+        } finally {
+            if (j != null) j.endWrite(seq);
+        }
+    }
+    public boolean cancelReservation(Reservation reservation) {
+        if (reservation.isRental()) return false;
+        AgencyJournal j = journal;
+        long seq = 0;
+        if (j != null) j.beginWrite();
+        try {
+            long[] logged = new long[1];
+            boolean cancelled = reservations.cancel(reservation,
+                    r -> { if (j != null) logged[0] = j.logCancel(r); });
+            seq = logged[0];
+            return cancelled;
+        } finally {
+            if (j != null) j.endWrite(seq);
+        }
+    }
+    boolean cancelReservation(String regNo, LocalDate from) {
+        Reservation r = reservations.find(regNo, from);
+        return r != null && cancelReservation(r);
+    }
+    public boolean isCarFree(String regNo, LocalDate from, LocalDate to) {
+        return findCar(regNo) != null && reservations.isFree(regNo, from, to);
+    }
+    // Cars matching `query` with nothing booked in [from, to); use FleetQuery.all() to ignore
+    // whether the car happens to be out right now. The booked cars come from the
+    // reservation book's day index, a few bitmaps whatever the fleet size; only a range
+    // starting before 1970, which the index doesn't cover, checks car by car.
+    public List<Car> findCarsFreeFor(LocalDate from, LocalDate to, FleetQuery query) {
+        List<Car> free = new ArrayList<>();
+        if (!from.isBefore(to)) return free;
+        if (from.toEpochDay() < 0) {
+            fleet.forEach(query, car -> {
+                if (reservations.isFree(car.getRegistrationNumber(), from, to)) free.add(car);
+            });
+        } else {
+            fleet.forEachExcept(query, reservations.bookedBetween(from, to), free::add);
+        }
+        return free;
+    }
+    public List<Reservation> getReservations(String regNo) { return reservations.getReservations(regNo); }
+
+    // Everything the journal needs to rebuild this agency, in replay order. Every car the fleet
+    // has held is listed in fleet id order, so replay gives each the same id and rentals can
+    // name their car by id; a car replaced under the same registration number drops out again
+    // when its successor is added, and removed ones are removed after the history.
+    void forEachSnapshotEvent(AgencyJournal.SnapshotSink sink) {
+        reservations.pruneEnded(LocalDate.now());
+        Map<String, Car> newest = new HashMap<>();
+        for (int id = 0; id < fleet.size(); id++) {
+            Car car = fleet.get(id);
+            sink.car(car);
+            newest.put(car.getRegistrationNumber(), car);
+        }
+        for (Customer c : customers.values()) sink.customer(c);
+        for (RentalTransaction t : transactions) sink.rental(t);
+        for (Car car : newest.values()) if (cars.get(car.getRegistrationNumber()) != car) sink.removedCar(car.getRegistrationNumber());
+        reservations.forEach(r -> { if (!r.isRental()) sink.reservation(r); });
+    }
+
+    // Snapshot replay: puts back one history row of the car with `fleetId`. A returned rental
+    // only goes into the history; an open one is rented again, which needs the car to still be
+    // the one under its registration number. False if the car or customer isn't there.
+    boolean restoreRental(int fleetId, String customerId, LocalDate date, int days, double cost, LocalDate returned) {
+        Car car = fleet.get(fleetId);
+        Customer customer = findCustomer(customerId);
+        if (car == null || customer == null) return false;
+        if (returned == null) {
+            return cars.get(car.getRegistrationNumber()) == car
+                    && rentCar(car.getRegistrationNumber(), customerId, days, date, cost) != null;
         }
-        return false;
+        RentalTransaction t = transactions.append(car, customer, date, days, cost);
+        customer.addTransaction(t);
+        transactions.close(t.getRow(), returned);
+        return true;
     }
 
-    public List<RentalTransaction> getTransactions() { return transactions; }
+    // Pricing
+    public void setPricingEngine(PricingEngine pricing) { this.pricing = pricing; }
+    public PricingEngine getPricingEngine() { return pricing; }
+    public double quote(String regNo, String customerId, LocalDate from, int days) {
+        Car car = findCar(regNo);
+        Customer customer = findCustomer(customerId);
+        if (car == null) return Double.NaN;
+        return pricing.quote(car, customer == null ? CustomerTier.STANDARD : customer.getTier(), from, days);
+    }
+    // Prices every car matching `query`, e.g. the whole available fleet for the quote screen
+    public void quoteFleet(FleetQuery query, CustomerTier tier, LocalDate from, int days, ObjDoubleConsumer<Car> sink) {
+        pricing.quoteFleet(fleet, query, tier, from, days, sink);
+    }
+
+    // Revenue per day, model, customer and car class over the whole history
+    public BillingReport getBillingReport() { return BillingReport.compute(transactions); }
+    public CustomerDirectory getCustomerDirectory() { return customerDirectory; }
+    TransactionLog getTransactionLog() { return transactions; }
+
+    // Read-only view; grows as rentals are appended
+    public List<RentalTransaction> getTransactions() { return Collections.unmodifiableList(transactions); }
 }
 
 
@@ -206,6 +617,23 @@ public class CarRentalSystemJava {
         // Return a car (Alice returns)
         boolean returned = agency.returnCar("KBC123");
         assert returned && agency.findCar("KBC123").isAvailable();
+        assert agency.findActiveRental("KBC123") == null && !agency.returnCar("KBC123");
+        assert agency.getActiveRentals("C001").isEmpty() && agency.getActiveRentals("C002").size() == 1;
+        assert agency.getAvailableCars().size() == 2;
+        assert agency.findCars(FleetQuery.all().luxury(true)).size() == 1;
+        assert agency.findCars(FleetQuery.available().maxPricePerDay(45)).size() == 1;
+
+        // Advance bookings
+        LocalDate today = LocalDate.now();
+        Reservation booking = agency.reserveCar("LMN456", "C001", today.plusDays(10), today.plusDays(14));
+        assert booking != null;
+        assert agency.reserveCar("LMN456", "C002", today.plusDays(13), today.plusDays(15)) == null;
+        assert agency.reserveCar("LMN456", "C002", today.plusDays(14), today.plusDays(15)) != null;
+        assert agency.reserveCar("KBP789", "C001", today.plusDays(1), today.plusDays(2)) == null; // Bob has it
+        assert agency.rentCar("LMN456", "C002", 20) == null && agency.findCar("LMN456").isAvailable();
+        assert agency.findCarsFreeFor(today.plusDays(10), today.plusDays(12), FleetQuery.all()).size() == 2;
+        assert agency.cancelReservation(booking) && agency.isCarFree("LMN456", today.plusDays(10), today.plusDays(14));
+        System.out.println("\nUpcoming bookings for LMN456: " + agency.getReservations("LMN456"));
         System.out.println("\nAlice returns the car: " + (returned ? "Success" : "Failed"));
 
         // Print all transactions
@@ -213,10 +641,236 @@ public class CarRentalSystemJava {
         for (RentalTransaction t : agency.getTransactions())
             System.out.println(t);
 
+        // Billing
+        BillingReport report = agency.getBillingReport();
+        assert report.getTotalCents() == 560_00;
+        assert report.getRevenuePerClass().get("Luxury") == 360_00;
+        assert report.getRevenuePerCustomer().get("C001") == 200_00;
+        assert BillingReport.money(-50).equals("-0.50") && BillingReport.money(-1_05).equals("-1.05");
+        assert BillingReport.money(7).equals("0.07") && BillingReport.money(123_45).equals("123.45");
+        System.out.println();
+        report.print(System.out, 5);
+
+        // Pricing rules: 25% weekend surcharge, 10% off a week or more, gold members 5% off
+        RateTablePricing rates = new RateTablePricing()
+                .weekendSurcharge(1.25)
+                .longRentalDiscount(7, 0.10)
+                .tierDiscount(CustomerTier.GOLD, 0.05);
+        agency.setPricingEngine(rates);
+        agency.addCustomer(new Customer("C003", "Carol", "carol@email.com", CustomerTier.GOLD));
+        LocalDate monday = today.with(java.time.temporal.TemporalAdjusters.next(java.time.DayOfWeek.MONDAY));
+        assert Math.abs(agency.quote("LMN456", "C001", monday, 5) - 250) < 1e-9;
+        assert Math.abs(agency.quote("LMN456", "C001", monday, 7) - 50 * (5 + 2 * 1.25) * 0.9) < 1e-9;
+        assert Math.abs(agency.quote("KBC123", "C003", monday, 1) - 40 * 0.95) < 1e-9;
+        System.out.println("\nQuotes for a week from " + monday + ":");
+        agency.quoteFleet(FleetQuery.available(), CustomerTier.STANDARD, monday, 7,
+                (car, price) -> System.out.printf("  %s  $%.2f%n", car, price));
+        rates.season(monday, monday.plusDays(7), 1.5, RateTablePricing.CarClass.STANDARD);
+        assert Math.abs(agency.quote("LMN456", "C001", monday, 1) - 50 * 1.5) < 1e-9;
+        assert Math.abs(agency.quote("KBP789", "C001", monday, 1) - 120) < 1e-9; // luxury unaffected
+
         // Validate rental history
         assert agency.findCustomer("C001").getRentalHistory().size() == 1;
         assert agency.findCustomer("C002").getRentalHistory().size() == 1;
+        assert refused(() -> new RentalAgency().addCustomer(agency.findCustomer("C001")));
+        assert refused(() -> new RentalAgency().addCar(agency.findCar("KBC123")));
+
+        // Picking up a reservation turns it into the rental; nobody else can take it
+        assert agency.reserveCar("LMN456", "C002", today, today.plusDays(3)) != null;
+        assert agency.rentCar("LMN456", "C001", 3) == null;
+        RentalTransaction pickup = agency.rentCar("LMN456", "C002", 3);
+        assert pickup != null && agency.getReservations("LMN456").get(0).isRental();
+        assert !agency.findCarsFreeFor(today, today.plusDays(3), FleetQuery.all()).contains(pickup.getCar());
+        assert agency.getReservations("LMN456").size() == 2; // the rental and the booking on day 14
+        assert agency.returnCar("LMN456") && agency.getReservations("LMN456").size() == 1;
+        assert agency.reserveCar("LMN456", "C001", today.minusDays(5), today.minusDays(2)) != null;
+        assert agency.getReservations("LMN456").size() == 1; // ended bookings are dropped
+
+        // The fleet-wide free search agrees with the per-car check, also once bookings are
+        // cancelled and a car is replaced under the same number
+        RentalAgency booked = new RentalAgency();
+        booked.addCustomer(new Customer("C001", "Alice", "alice@email.com"));
+        for (int i = 0; i < 100; i++) booked.addCar(new Car("F" + i, "Toyota Yaris", 30) {});
+        Random random = new Random(42);
+        List<Reservation> bookings = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            LocalDate from = today.plusDays(random.nextInt(3000));
+            Reservation r = booked.reserveCar("F" + random.nextInt(100), "C001", from, from.plusDays(1 + random.nextInt(30)));
+            if (r != null) bookings.add(r);
+        }
+        for (int i = 0; i < bookings.size(); i += 3) assert booked.cancelReservation(bookings.get(i));
+        booked.addCar(new Car("F7", "Toyota Yaris", 30) {});
+        for (int i = 0; i < 200; i++) {
+            LocalDate from = today.plusDays(random.nextInt(3000));
+            LocalDate to = from.plusDays(1 + random.nextInt(i % 2 == 0 ? 10 : 1000));
+            Set<Car> free = new HashSet<>(booked.findCarsFreeFor(from, to, FleetQuery.all()));
+            for (int c = 0; c < 100; c++) {
+                Car car = booked.findCar("F" + c);
+                assert free.contains(car) == booked.isCarFree("F" + c, from, to) : car + " " + from + " " + to;
+            }
+            assert free.size() <= 100;
+        }
+
+        // A booking racing removeCar either lands first and keeps the car, or is refused
+        for (int i = 0; i < 200; i++) {
+            String regNo = "X" + i;
+            booked.addCar(new Car(regNo, "Toyota Yaris", 30) {});
+            Thread reserver = new Thread(() -> booked.reserveCar(regNo, "C001", today.plusDays(1), today.plusDays(2)));
+            reserver.start();
+            Car removed = booked.removeCar(regNo);
+            try {
+                reserver.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            assert removed == null ? booked.getReservations(regNo).size() == 1 : booked.getReservations(regNo).isEmpty();
+        }
+
+        // Removed cars stay removed after a restart, from the log and from a snapshot, and
+        // keep their history
+        try {
+            Path dir = Files.createTempDirectory("agency");
+            RentalAgency stored = RentalAgency.open(dir);
+            stored.addCar(new Car("R1", "Toyota Yaris", 30) {});
+            stored.addCar(new Car("R2", "Toyota Yaris", 30) {});
+            stored.addCustomer(new Customer("C001", "Alice", "alice@email.com"));
+            assert stored.rentCar("R1", "C001", 2) != null && stored.returnCar("R1");
+            assert stored.rentCar("R2", "C001", 2) != null && stored.returnCar("R2");
+            assert stored.removeCar("R1") != null && stored.removeCar("R2") != null;
+            stored.addCar(new Car("R2", "Ford Focus", 35) {});
+            assert stored.rentCar("R2", "C001", 1) != null;
+            Map<String, Long> revenue = stored.getBillingReport().getRevenuePerModel();
+            stored.close();
+            for (int restart = 0; restart < 3; restart++) {
+                stored = RentalAgency.open(dir);
+                assert stored.findCar("R1") == null && "Ford Focus".equals(stored.findCar("R2").getModel());
+                assert stored.getAvailableCars().isEmpty() && stored.getTransactions().size() == 3;
+                assert "R1".equals(stored.getTransactions().get(0).getCar().getRegistrationNumber());
+                // The old R2's rental stays a Toyota Yaris rental, the new R2 is still out
+                assert "Toyota Yaris".equals(stored.getTransactions().get(1).getCar().getModel());
+                assert stored.findActiveRental("R2").getCar() == stored.findCar("R2");
+                assert stored.getBillingReport().getRevenuePerModel().equals(revenue);
+                stored.snapshot();
+                stored.close();
+            }
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Recovery stops at an event that doesn't apply instead of skipping it: here the log's
+        // last event, a return, is written twice
+        try {
+            Path dir = Files.createTempDirectory("agency");
+            RentalAgency stored = RentalAgency.open(dir);
+            stored.addCar(new Car("D1", "Toyota Yaris", 30) {});
+            stored.addCustomer(new Customer("C001", "Alice", "alice@email.com"));
+            assert stored.rentCar("D1", "C001", 2) != null && stored.returnCar("D1");
+            stored.close();
+            Path log;
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                log = files.filter(f -> f.getFileName().toString().startsWith("events-")).findFirst().orElseThrow();
+            }
+            java.nio.ByteBuffer records = java.nio.ByteBuffer.wrap(Files.readAllBytes(log));
+            int last = 0;
+            while (records.hasRemaining()) {
+                last = records.position();
+                records.position(last + 8 + records.getInt());
+            }
+            Files.write(log, Arrays.copyOfRange(records.array(), last, records.limit()), java.nio.file.StandardOpenOption.APPEND);
+            try {
+                RentalAgency.open(dir);
+                assert false : "replayed a return of a car that wasn't out";
+            } catch (IOException e) {
+                assert e.getMessage().startsWith("Cannot replay event 5 of ") : e.getMessage();
+            }
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // A journal that can't be written leaves the agency as it was
+        try {
+            Path dir = Files.createTempDirectory("agency");
+            RentalAgency stored = RentalAgency.open(dir);
+            stored.addCar(new Car("J1", "Toyota Yaris", 30) {});
+            stored.addCar(new Car("J2", "Toyota Yaris", 30) {});
+            stored.addCustomer(new Customer("C001", "Alice", "alice@email.com"));
+            assert stored.rentCar("J1", "C001", 2) != null;
+            Reservation held = stored.reserveCar("J2", "C001", today.plusDays(5), today.plusDays(7));
+            assert held != null;
+            stored.close();
+            assert refused(() -> stored.reserveCar("J2", "C001", today.plusDays(10), today.plusDays(12)));
+            assert stored.isCarFree("J2", today.plusDays(10), today.plusDays(12));
+            assert refused(() -> stored.cancelReservation(held));
+            assert stored.getReservations("J2").contains(held);
+            assert refused(() -> stored.rentCar("J2", "C001", 2));
+            assert stored.findCar("J2").isAvailable() && stored.getAvailableCars().size() == 1;
+            assert stored.isCarFree("J2", today, today.plusDays(2));
+            assert refused(() -> stored.returnCar("J1"));
+            assert stored.findActiveRental("J1") != null && !stored.findCar("J1").isAvailable();
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Two branches: a transfer, then a one-way rental returned at the other branch
+        ShardedRentalAgency branches = new ShardedRentalAgency("North", "South");
+        branches.addCar("North", new Car("N1", "Toyota Corolla", 40) {});
+        branches.addCar("North", new LuxuryCar("N2", "Audi A8", 120));
+        branches.addCar("South", new Car("S1", "Ford Focus", 35) {});
+        branches.addCustomer(new Customer("C001", "Alice", "alice@email.com"));
+        assert branches.transferCar("N1", "South") && "South".equals(branches.findBranch("N1"));
+        assert branches.getBranch("North").findCar("N1") == null;
+        assert branches.rentCarOneWay("N2", "C001", 2, "South") != null;
+        assert !branches.transferCar("N2", "South"); // out on rental
+        assert branches.returnCar("N2") && "South".equals(branches.findBranch("N2"));
+        assert branches.findCar("N2") instanceof LuxuryCar && branches.findCar("N2").isAvailable();
+        assert branches.countCars() == 3 && branches.countAvailableCars() == 3;
+        assert branches.getRentalHistory("C001").size() == 1;
+        Car owned = agency.findCar("KBC123"); // already in another agency, so the branch refuses it
+        assert refused(() -> branches.addCar("North", owned));
+        assert branches.findBranch("KBC123") == null && branches.countCars() == 3;
+        branches.addCar("North", new Car("KBC123", "Toyota Corolla", 40) {});
+        assert "North".equals(branches.findBranch("KBC123")) && branches.countCars() == 4;
+        System.out.println("\nBranches: N1 and N2 now at " + branches.findBranch("N1") + ", "
+                + branches.getBranch("South").getFleet().size() + " cars in South");
+
+        // Columnar export: a second export only adds what changed
+        try {
+            Path archive = Files.createTempFile("rentals", ".rtx");
+            TransactionExporter exporter = new TransactionExporter(archive);
+            assert exporter.export(agency.getTransactionLog()) == agency.getTransactions().size();
+            assert exporter.export(agency.getTransactionLog()) == 0;
+            TransactionArchive exported = TransactionArchive.open(archive);
+            assert exported.size() == agency.getTransactions().size();
+            assert exported.totalCents() == agency.getBillingReport().getTotalCents();
+            assert "KBC123".equals(exported.regNo(exported.carId(0)));
+            System.out.println("\nExported " + exported.size() + " rentals in "
+                    + Files.size(archive) + " bytes");
+            Files.delete(archive);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
         System.out.println("\nAll tests passed.");
     }
+
+    private static boolean refused(Runnable op) {
+        try {
+            op.run();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
 }
\ No newline at end of file
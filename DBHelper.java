@@ -0,0 +1,438 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import metrics.Metrics;
+
+// Database access for the registration form. Connections come from a small pool instead of
+// a new JDBC connection per query, and the insert/select statements are prepared once per
+// connection and reused.
+//
+// The database is configured with system properties:
+//   -Ddb.url=jdbc:...  -Ddb.user=...  -Ddb.password=...  -Ddb.poolSize=8
+class DBHelper {
+    static final String INSERT_USER = "INSERT INTO users (name, contact, gender, address) VALUES (?, ?, ?, ?)";
+    static final String SELECT_USERS = "SELECT id, name, contact, gender, address FROM users";
+    static final String SELECT_USERS_AFTER = SELECT_USERS + " WHERE id > ? ORDER BY id";
+    static final String SELECT_ID_AT = "SELECT id FROM users ORDER BY id LIMIT 1 OFFSET ?";
+    static final String COUNT_USERS = "SELECT COUNT(*) FROM users";
+    // Same matches as UserSearchIndex: lower-cased, on the whole name, any later word of it
+    // (after a space) or the contact
+    static final String SEARCH_USERS = SELECT_USERS + " WHERE LOWER(name) LIKE ? ESCAPE '!' UNION "
+            + SELECT_USERS + " WHERE LOWER(name) LIKE ? ESCAPE '!' UNION "
+            + SELECT_USERS + " WHERE LOWER(contact) LIKE ? ESCAPE '!' ORDER BY name";
+    // Expression indexes for the LOWER(...) prefix matches (MySQL 8.0.13+ syntax)
+    static final String[][] SEARCH_INDEXES = {
+            { "idx_users_name_lower", "CREATE INDEX idx_users_name_lower ON users ((LOWER(name)))" },
+            { "idx_users_contact_lower", "CREATE INDEX idx_users_contact_lower ON users ((LOWER(contact)))" } };
+
+    private static volatile ConnectionPool pool;
+    private static volatile boolean searchIndexesChecked; // for the current pool
+
+    // Borrowing includes any wait for a free connection; selects cover every query that
+    // reads user rows (pages, searches, lookups by id)
+    private static final Metrics.Timer CONNECTION_TIMER = Metrics.timer("db.getConnection");
+    private static final Metrics.Timer SELECT_TIMER = Metrics.timer("db.selectUsers");
+    private static final Metrics.Timer INSERT_TIMER = Metrics.timer("db.insertUser");
+
+    static ConnectionPool pool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DBHelper.class) {
+                if (pool == null) {
+                    pool = new ConnectionPool(
+                            System.getProperty("db.url", "jdbc:mysql://localhost:3306/registration"),
+                            System.getProperty("db.user", "root"),
+                            System.getProperty("db.password", ""),
+                            Integer.getInteger("db.poolSize", 8));
+                }
+                p = pool;
+            }
+        }
+        return p;
+    }
+
+    // Replaces the pool (e.g. to point at another database); the old one is closed
+    static synchronized void setPool(ConnectionPool newPool) {
+        ConnectionPool old = pool;
+        pool = newPool;
+        searchIndexesChecked = false;
+        if (old != null) old.close();
+    }
+
+    // A pooled connection; close() hands it back to the pool
+    public static Connection getConnection() throws SQLException {
+        long start = CONNECTION_TIMER.start();
+        Connection conn = null;
+        try {
+            return conn = pool().getConnection();
+        } finally {
+            CONNECTION_TIMER.stop(start, conn != null);
+        }
+    }
+
+    // Creates the indexes behind the search box if the database doesn't have them yet; checked
+    // once per pool. A database that can't build them still answers searches, by scanning.
+    public static void ensureSearchIndexes() {
+        if (searchIndexesChecked) return;
+        try (Connection conn = getConnection(); Statement st = conn.createStatement()) {
+            DatabaseMetaData meta = conn.getMetaData();
+            for (String[] index : SEARCH_INDEXES) {
+                if (hasIndex(meta, conn.getCatalog(), index[0])) continue;
+                try {
+                    st.execute(index[1]);
+                } catch (SQLException e) {
+                    System.err.println("Could not create " + index[0] + ", searches will scan users until the "
+                            + "in-memory index is loaded: " + e.getMessage());
+                }
+            }
+            searchIndexesChecked = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean hasIndex(DatabaseMetaData meta, String catalog, String name) throws SQLException {
+        String table = meta.storesUpperCaseIdentifiers() ? "USERS" : "users";
+        try (ResultSet rs = meta.getIndexInfo(catalog, null, table, false, true)) {
+            while (rs.next()) if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+        }
+        return false;
+    }
+
+    // Users whose name, a later word of the name, or contact starts with `prefix`, ignoring
+    // case, as UserSearchIndex.search matches them; {id, name, gender, address, contact} per
+    // row. Name and contact prefixes use the indexes; the later-word match has to scan.
+    public static List<Object[]> searchUsers(String prefix, int limit) throws SQLException {
+        String p = UserSearchIndex.normalize(prefix).replace("!", "!!").replace("%", "!%").replace("_", "!_");
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(SEARCH_USERS)) {
+            ps.setString(1, p + "%");
+            ps.setString(2, "% " + p + "%");
+            ps.setString(3, p + "%");
+            ps.setMaxRows(limit);
+            return readUsers(ps);
+        }
+    }
+
+    // The users with the given ids, in the same order
+    public static List<Object[]> findUsers(long[] ids) throws SQLException {
+        if (ids.length == 0) return new ArrayList<>();
+        StringBuilder sql = new StringBuilder(SELECT_USERS).append(" WHERE id IN (");
+        for (int i = 0; i < ids.length; i++) sql.append(i == 0 ? "?" : ", ?");
+        sql.append(')');
+        Map<Long, Object[]> byId = new HashMap<>();
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < ids.length; i++) ps.setLong(i + 1, ids[i]);
+            for (Object[] row : readUsers(ps)) byId.put((Long) row[0], row);
+        }
+        List<Object[]> rows = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Object[] row = byId.get(id);
+            if (row != null) rows.add(row);
+        }
+        return rows;
+    }
+
+    static List<Object[]> readUsers(PreparedStatement ps) throws SQLException {
+        long start = SELECT_TIMER.start();
+        boolean ok = false;
+        List<Object[]> rows = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(userRow(rs.getLong("id"), rs.getString("name"), rs.getString("contact"),
+                                 rs.getString("gender"), rs.getString("address")));
+            }
+            ok = true;
+        } finally {
+            SELECT_TIMER.stop(start, ok);
+        }
+        return rows;
+    }
+
+    // A user as the table shows it: {id, name, gender, address, contact}
+    static Object[] userRow(long id, String name, String contact, String gender, String address) {
+        return new Object[] { id, name, gender, address, contact };
+    }
+
+    // Inserts a registration and returns its generated id
+    public static long insertUser(String name, String contact, String gender, String address) throws SQLException {
+        long start = INSERT_TIMER.start();
+        boolean ok = false;
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(INSERT_USER, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, name);
+            ps.setString(2, contact);
+            ps.setString(3, gender);
+            ps.setString(4, address);
+            ps.executeUpdate();
+            ok = true;
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                return keys.next() ? keys.getLong(1) : -1;
+            }
+        } finally {
+            INSERT_TIMER.stop(start, ok);
+        }
+    }
+}
+
+// Bounded JDBC connection pool.
+//
+// At most `maxSize` connections are lent out; callers wait up to `borrowTimeoutMillis` for
+// one. Idle connections are reused most-recently-used first (so the rest can age out), are
+// validated with isValid() if they sat idle longer than `validateAfterMillis`, and are
+// closed by a background sweep once idle for longer than `idleTimeoutMillis`.
+//
+// Lent connections are proxies: close() returns the connection, rolling back anything left
+// uncommitted, and prepareStatement() serves statements from a per-connection LRU cache, so
+// each distinct SQL string is prepared once per physical connection.
+class ConnectionPool implements AutoCloseable {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final int statementCacheSize;
+    private final long borrowTimeoutMillis;
+    private final long validateAfterMillis;
+    private final long idleTimeoutMillis;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int maxSize) {
+        this(url, user, password, maxSize, 32, 5_000, 5_000, 60_000);
+    }
+
+    public ConnectionPool(String url, String user, String password, int maxSize, int statementCacheSize,
+                          long borrowTimeoutMillis, long validateAfterMillis, long idleTimeoutMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validateAfterMillis = validateAfterMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw new SQLTimeoutException("No connection available within " + borrowTimeoutMillis + " ms (pool size " + maxSize + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) return pc.lease();
+                pc.closePhysical();
+            }
+            return new PooledConnection(DriverManager.getConnection(url, user, password)).lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getIdleCount() { return idle.size(); }
+
+    public int getActiveCount() { return maxSize - permits.availablePermits(); }
+
+    private boolean isUsable(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.lastUsed < validateAfterMillis) return true;
+        try {
+            return pc.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc, boolean broken) {
+        try {
+            if (!broken && !closed) {
+                try {
+                    if (!pc.physical.getAutoCommit()) {
+                        pc.physical.rollback();
+                        pc.physical.setAutoCommit(true);
+                    }
+                    pc.lastUsed = System.currentTimeMillis();
+                    idle.offerFirst(pc);
+                    return;
+                } catch (SQLException e) {
+                    // fall through and drop it
+                }
+            }
+            pc.closePhysical();
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Closes connections idle for longer than the timeout; the oldest sit at the tail
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        for (Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext(); ) {
+            PooledConnection pc = it.next();
+            if (pc.lastUsed > cutoff) break;
+            if (idle.removeLastOccurrence(pc)) pc.closePhysical();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) pc.closePhysical();
+    }
+
+    // One physical connection and its statement cache. Only the borrower touches it.
+    private final class PooledConnection {
+        final Connection physical;
+        final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Lease(this));
+        }
+
+        PreparedStatement prepare(String sql, int generatedKeys) throws SQLException {
+            String key = generatedKeys + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached != null && !cached.inUse) {
+                cached.inUse = true;
+                return cached.proxy;
+            }
+            PreparedStatement ps = generatedKeys == Statement.NO_GENERATED_KEYS
+                    ? physical.prepareStatement(sql) : physical.prepareStatement(sql, generatedKeys);
+            if (cached != null || statementCacheSize <= 0) return ps; // same SQL twice at once: don't cache the second
+
+            CachedStatement entry = new CachedStatement(ps);
+            statements.put(key, entry);
+            if (statements.size() > statementCacheSize) {
+                Iterator<CachedStatement> eldest = statements.values().iterator();
+                CachedStatement evicted = eldest.next();
+                eldest.remove();
+                if (evicted.inUse) evicted.evicted = true; // closed for real when its user is done
+                else closeQuietly(evicted.statement);
+            }
+            return entry.proxy;
+        }
+
+        void closePhysical() {
+            for (CachedStatement s : statements.values()) closeQuietly(s.statement);
+            statements.clear();
+            closeQuietly(physical);
+        }
+    }
+
+    // A prepared statement kept open between uses; close() just makes it available again
+    private static final class CachedStatement implements InvocationHandler {
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        boolean inUse = true;
+        boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        inUse = false;
+                        if (evicted) {
+                            statement.close();
+                        } else {
+                            statement.clearParameters();
+                            statement.clearBatch();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                default:
+                    if (!inUse) throw new SQLException("Statement is closed");
+                    return invokeOn(statement, method, args);
+            }
+        }
+    }
+
+    // The handle given to a borrower. After close() every call fails, so a connection kept
+    // by mistake can't be used behind the next borrower's back.
+    private final class Lease implements InvocationHandler {
+        private PooledConnection pc;
+        private boolean broken;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (pc != null) {
+                    PooledConnection returned = pc;
+                    pc = null;
+                    release(returned, broken);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) return pc == null || pc.physical.isClosed();
+            if (name.equals("equals")) return proxy == args[0];
+            if (name.equals("hashCode")) return System.identityHashCode(proxy);
+            if (pc == null) throw new SQLException("Connection is closed");
+            if (name.equals("prepareStatement") && args.length <= 2 && (args.length == 1 || args[1] instanceof Integer))
+                return pc.prepare((String) args[0], args.length == 1 ? Statement.NO_GENERATED_KEYS : (Integer) args[1]);
+            try {
+                return invokeOn(pc.physical, method, args);
+            } catch (SQLNonTransientConnectionException | SQLRecoverableException e) {
+                broken = true;
+                throw e;
+            }
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable c) {
+        try {
+            c.close();
+        } catch (Exception ignored) {
+            // already failing; nothing useful to do
+        }
+    }
+}
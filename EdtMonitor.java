@@ -0,0 +1,222 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.SecondaryLoop;
+import java.awt.Toolkit;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+// Measures how responsive the Event Dispatch Thread is. Once installed it times every event
+// the EDT dispatches, and a 10 ms heartbeat records how long a freshly posted event waits
+// before it runs (what a click or keystroke would wait). A frame lasts about 16 ms, so
+// anything above that is a visible stall.
+//
+// An event that opens a modal dialog (or any other secondary loop) keeps dispatching the
+// events pumped inside it. Those inner events are timed on their own; the outer one is left
+// out, since its duration is however long the dialog stayed open, and is only counted.
+class EdtMonitor extends EventQueue {
+    static final long FRAME_NANOS = 16_000_000;
+
+    // Histogram buckets: < 1, 2, 4, 8, 16, 32, ... ms
+    private static final int BUCKETS = 16;
+
+    private final AtomicLongArray dispatch = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray waiting = new AtomicLongArray(BUCKETS);
+    private volatile long maxDispatch;
+    private volatile long maxWait;
+    private volatile long nestedLoops;
+    private Timer heartbeat;
+
+    // EDT only: how deep in nested dispatches we are, and whether the event being dispatched
+    // at the current depth has dispatched others itself
+    private int depth;
+    private boolean ranNestedLoop;
+
+    public static EdtMonitor install() {
+        EdtMonitor monitor = new EdtMonitor();
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(monitor);
+        SwingUtilities.invokeLater(monitor::startHeartbeat);
+        return monitor;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        boolean enclosing = ranNestedLoop;
+        ranNestedLoop = false;
+        depth++;
+        long start = System.nanoTime();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            depth--;
+            if (ranNestedLoop) {
+                nestedLoops++;
+            } else {
+                dispatch.incrementAndGet(bucket(elapsed));
+                if (elapsed > maxDispatch) maxDispatch = elapsed;
+            }
+            ranNestedLoop = enclosing || depth > 0;
+        }
+    }
+
+    private void startHeartbeat() {
+        heartbeat = new Timer(10, e -> {
+            long posted = System.nanoTime();
+            EventQueue.invokeLater(() -> {
+                long waited = System.nanoTime() - posted;
+                waiting.incrementAndGet(bucket(waited));
+                if (waited > maxWait) maxWait = waited;
+            });
+        });
+        heartbeat.start();
+    }
+
+    public void stop() {
+        if (heartbeat != null) heartbeat.stop();
+    }
+
+    private static int bucket(long nanos) {
+        long ms = nanos / 1_000_000;
+        return Math.min(BUCKETS - 1, ms == 0 ? 0 : 64 - Long.numberOfLeadingZeros(ms));
+    }
+
+    // Events over one frame, out of all events
+    public long[] slowDispatches() { return overFrame(dispatch); }
+
+    public long[] slowWaits() { return overFrame(waiting); }
+
+    private static long[] overFrame(AtomicLongArray histogram) {
+        long total = 0, slow = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += histogram.get(i);
+            if (i > bucket(FRAME_NANOS - 1)) slow += histogram.get(i);
+        }
+        return new long[] { slow, total };
+    }
+
+    public void print(PrintStream out) {
+        long[] d = slowDispatches(), w = slowWaits();
+        out.printf("EDT: %,d events, %,d over 16 ms, longest %.1f ms (%,d ran a nested loop, not timed)%n",
+                d[1], d[0], maxDispatch / 1e6, nestedLoops);
+        out.printf("EDT: %,d heartbeats, %,d waited over 16 ms, longest wait %.1f ms%n", w[1], w[0], maxWait / 1e6);
+    }
+
+    // Headless run of the registration form's EDT traffic, driven with invokeAndWait the way
+    // UserCache.main drives the table model. Needs a JDBC driver, e.g. an embedded H2:
+    //
+    //   java -Djava.awt.headless=true -cp out:h2.jar EdtMonitor [rows] [seconds]
+    //
+    // Seeds `rows` users, then keeps the database thread busy with full-table reads while
+    // the "user" scrolls the table model to random rows and saves registrations the way
+    // NewJFrame does (insert in a SwingWorker on the database thread, model update in
+    // done()). One event also runs a 200 ms secondary loop, as a modal dialog would.
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        String url = System.getProperty("db.url", "jdbc:h2:mem:edt;DB_CLOSE_DELAY=-1");
+        String user = System.getProperty("db.user", "sa");
+        String password = System.getProperty("db.password", "");
+
+        try (Connection keepAlive = DriverManager.getConnection(url, user, password)) {
+            DBHelperBenchmark.createTable(keepAlive);
+            try (PreparedStatement ps = keepAlive.prepareStatement(DBHelper.INSERT_USER)) {
+                for (int i = 0; i < rows; i++) {
+                    ps.setString(1, "user" + i);
+                    ps.setString(2, "07" + (10_000_000 + i));
+                    ps.setString(3, i % 2 == 0 ? "Male" : "Female");
+                    ps.setString(4, "street " + i);
+                    ps.addBatch();
+                    if (i % 1000 == 999) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            DBHelper.setPool(new ConnectionPool(url, user, password, 4));
+
+            EdtMonitor monitor = install();
+            ExecutorService db = Executors.newSingleThreadExecutor();
+            UserCache cache = new UserCache(100_000);
+            UserTableModel[] model = new UserTableModel[1];
+            SwingUtilities.invokeAndWait(() -> {
+                model[0] = new UserTableModel(db, NewJFrame.PAGE_SIZE, 50, cache);
+                model[0].refresh();
+            });
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            long[] scans = new long[1];
+            Runnable scan = new Runnable() {
+                public void run() {
+                    if (!running.get()) return;
+                    try (Connection conn = DBHelper.getConnection();
+                         PreparedStatement ps = conn.prepareStatement(DBHelper.SELECT_USERS)) {
+                        DBHelper.readUsers(ps);
+                        scans[0]++;
+                    } catch (java.sql.SQLException e) {
+                        e.printStackTrace();
+                    }
+                    db.execute(this);
+                }
+            };
+            db.execute(scan);
+
+            Random random = new Random(42);
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            int saves = 0, scrolls = 0;
+            for (int step = 0; System.nanoTime() < deadline; step++) {
+                int first = random.nextInt(Math.max(1, rows - 40));
+                SwingUtilities.invokeAndWait(() -> {
+                    for (int r = first; r < first + 40 && r < model[0].getRowCount(); r++)
+                        for (int c = 0; c < UserTableModel.COLUMNS.length; c++) model[0].getValueAt(r, c);
+                });
+                scrolls++;
+                if (step % 10 == 0) {
+                    String name = "new" + step, contact = "08" + step;
+                    SwingUtilities.invokeAndWait(() -> new SwingWorker<Long, Void>() {
+                        protected Long doInBackground() throws Exception {
+                            return DBHelper.insertUser(name, contact, "Female", "new street");
+                        }
+
+                        protected void done() {
+                            try {
+                                Object[] row = DBHelper.userRow(get(), name, contact, "Female", "new street");
+                                cache.put(row);
+                                model[0].rowAppended(row);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    }.execute());
+                    saves++;
+                }
+                if (step == 100) {
+                    SwingUtilities.invokeAndWait(() -> {
+                        SecondaryLoop loop = Toolkit.getDefaultToolkit().getSystemEventQueue().createSecondaryLoop();
+                        Timer close = new Timer(200, e -> loop.exit());
+                        close.setRepeats(false);
+                        close.start();
+                        loop.enter();
+                    });
+                }
+                Thread.sleep(5);
+            }
+            running.set(false);
+            db.submit(() -> { }).get();
+            SwingUtilities.invokeAndWait(monitor::stop);
+            System.out.printf("%,d rows, %d s: %,d scrolls of 40 rows, %,d saves, %,d full-table reads on the database thread%n",
+                    rows, seconds, scrolls, saves, scans[0]);
+            monitor.print(System.out);
+            db.shutdown();
+            DBHelper.setPool(null);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,253 @@
+package carrentalsystem.java;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+// Fleet query engine: every car gets a dense id and each attribute we filter on is a bitmap
+// over those ids, so a query is a word-by-word AND of a few bitmaps instead of a walk over
+// every Car object.
+//
+// Cars are only ever added (under the index lock); availability bits flip concurrently from
+// rentCar/returnCar. Pages are never reallocated once created, so a bit flip can't be lost
+// by a concurrent grow.
+class FleetIndex {
+    static final double DEFAULT_PRICE_BAND = 25.0;
+
+    private final double priceBandWidth;
+    private final Object lock = new Object();
+
+    private volatile Car[][] carPages = new Car[0][];
+    private volatile double[][] pricePages = new double[0][];
+    private volatile int size;
+
+    private final Bitmap present = new Bitmap();
+    private final Bitmap available = new Bitmap();
+    private final Bitmap luxury = new Bitmap();
+    private final Map<String, Bitmap> byModel = new ConcurrentHashMap<>();
+    private volatile Bitmap[] priceBands = new Bitmap[0];
+
+    public FleetIndex() { this(DEFAULT_PRICE_BAND); }
+
+    public FleetIndex(double priceBandWidth) {
+        if (priceBandWidth <= 0) throw new IllegalArgumentException("priceBandWidth must be positive");
+        this.priceBandWidth = priceBandWidth;
+    }
+
+    // Registers a car and returns its dense id
+    public int add(Car car) {
+        synchronized (lock) {
+            int id = size;
+            int page = id >>> Bitmap.PAGE_BITS;
+            if (page >= carPages.length) {
+                carPages = Arrays.copyOf(carPages, page + 1);
+                carPages[page] = new Car[Bitmap.PAGE_CAPACITY];
+                pricePages = Arrays.copyOf(pricePages, page + 1);
+                pricePages[page] = new double[Bitmap.PAGE_CAPACITY];
+            }
+            double price = car.calculateRentalCost(1);
+            carPages[page][id & Bitmap.PAGE_MASK] = car;
+            pricePages[page][id & Bitmap.PAGE_MASK] = price;
+            car.assignFleetId(id);
+
+            byModel.computeIfAbsent(car.getModel(), m -> new Bitmap()).set(id);
+            if (car instanceof LuxuryCar) luxury.set(id);
+            band(bandOf(price)).set(id);
+            if (car.isAvailable()) available.set(id);
+            present.set(id);
+            size = id + 1; // publishes the writes above to readers
+            return id;
+        }
+    }
+
+    // Drops a car that was replaced in the agency; its id is not reused
+    public void remove(Car car) {
+        int id = car.getFleetId();
+        if (id < 0) return;
+        synchronized (lock) {
+            present.clear(id);
+            available.clear(id);
+        }
+    }
+
+    public void markAvailable(Car car) { if (car.getFleetId() >= 0) available.set(car.getFleetId()); }
+    public void markRented(Car car) { if (car.getFleetId() >= 0) available.clear(car.getFleetId()); }
+
+    public int size() { return size; }
+
+    public Car get(int id) {
+        if (id < 0 || id >= size) return null;
+        return carPages[id >>> Bitmap.PAGE_BITS][id & Bitmap.PAGE_MASK];
+    }
+
+    private double price(int id) { return pricePages[id >>> Bitmap.PAGE_BITS][id & Bitmap.PAGE_MASK]; }
+
+    private int bandOf(double price) { return (int) Math.max(0, Math.floor(price / priceBandWidth)); }
+
+    private Bitmap band(int band) {
+        Bitmap[] bands = priceBands;
+        if (band >= bands.length) {
+            bands = Arrays.copyOf(bands, band + 1);
+            for (int i = priceBands.length; i < bands.length; i++) bands[i] = new Bitmap();
+            priceBands = bands;
+        }
+        return bands[band];
+    }
+
+    // Queries
+
+    public int count(FleetQuery query) {
+        int n = 0;
+        int limit = size;
+        for (int w = 0, words = Bitmap.wordsFor(limit); w < words; w++)
+            n += Long.bitCount(match(query, w, limit));
+        return n;
+    }
+
+    public void forEach(FleetQuery query, Consumer<? super Car> action) {
+        forEachExcept(query, Collections.emptyList(), action);
+    }
+
+    // The matches whose bit is set in none of `excluded`, e.g. the cars booked for a range
+    public void forEachExcept(FleetQuery query, List<Bitmap> excluded, Consumer<? super Car> action) {
+        int limit = size;
+        for (int w = 0, words = Bitmap.wordsFor(limit); w < words; w++) {
+            long bits = match(query, w, limit);
+            for (int i = 0, n = excluded.size(); i < n && bits != 0; i++) bits &= ~excluded.get(i).word(w);
+            while (bits != 0) {
+                action.accept(get((w << 6) + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    // Keyset paging: fills `out` with matches whose id is >= fromId and returns how many were
+    // written. Pass lastCar.getFleetId() + 1 as fromId to fetch the next page.
+    public int page(FleetQuery query, int fromId, Car[] out) {
+        int limit = size;
+        int n = 0;
+        fromId = Math.max(0, fromId);
+        for (int w = fromId >>> 6, words = Bitmap.wordsFor(limit); w < words && n < out.length; w++) {
+            long bits = match(query, w, limit);
+            if (w == fromId >>> 6) bits &= -1L << (fromId & 63);
+            while (bits != 0 && n < out.length) {
+                out[n++] = get((w << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return n;
+    }
+
+    public List<Car> list(FleetQuery query) {
+        List<Car> result = new ArrayList<>();
+        forEach(query, result::add);
+        return result;
+    }
+
+    // Evaluates the query for 64 consecutive ids starting at word * 64
+    private long match(FleetQuery query, int w, int limit) {
+        long bits = query.isAvailableOnly() ? available.word(w) & present.word(w) : present.word(w);
+        if ((w + 1) << 6 > limit) bits &= (1L << (limit & 63)) - 1;
+        if (bits == 0) return 0;
+
+        if (query.getModel() != null) {
+            Bitmap model = byModel.get(query.getModel());
+            if (model == null) return 0;
+            bits &= model.word(w);
+        }
+        if (query.getLuxury() != null) bits &= query.getLuxury() ? luxury.word(w) : ~luxury.word(w);
+        if (bits == 0 || Double.isNaN(query.getMaxPrice())) return bits;
+
+        // Bands fully below the limit are taken as a whole; only the band the limit falls in
+        // needs an exact per-car price check.
+        double max = query.getMaxPrice();
+        if (max < 0) return 0;
+        Bitmap[] bands = priceBands;
+        int edgeBand = bandOf(max);
+        long below = 0;
+        for (int b = 0, n = Math.min(edgeBand, bands.length); b < n; b++) below |= bands[b].word(w);
+        long edge = edgeBand < bands.length ? bands[edgeBand].word(w) & bits : 0;
+        long result = bits & below;
+        while (edge != 0) {
+            int id = (w << 6) + Long.numberOfTrailingZeros(edge);
+            if (price(id) <= max) result |= edge & -edge;
+            edge &= edge - 1;
+        }
+        return result;
+    }
+
+    // Paged bitmap; pages are created on demand and never replaced
+    static final class Bitmap {
+        static final int PAGE_BITS = 16;
+        static final int PAGE_CAPACITY = 1 << PAGE_BITS;
+        static final int PAGE_MASK = PAGE_CAPACITY - 1;
+        private static final int WORDS_PER_PAGE = PAGE_CAPACITY >>> 6;
+
+        private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+        static int wordsFor(int bits) { return (bits + 63) >>> 6; }
+
+        long word(int w) {
+            AtomicLongArray[] p = pages;
+            int page = w / WORDS_PER_PAGE;
+            return page < p.length ? p[page].get(w % WORDS_PER_PAGE) : 0;
+        }
+
+        void set(int bit) {
+            AtomicLongArray words = pageFor(bit);
+            int w = (bit >>> 6) % WORDS_PER_PAGE;
+            long mask = 1L << (bit & 63);
+            long old;
+            while (((old = words.get(w)) & mask) == 0 && !words.compareAndSet(w, old, old | mask)) { }
+        }
+
+        void clear(int bit) {
+            AtomicLongArray[] p = pages;
+            int page = bit >>> PAGE_BITS;
+            if (page >= p.length) return;
+            AtomicLongArray words = p[page];
+            int w = (bit >>> 6) % WORDS_PER_PAGE;
+            long mask = 1L << (bit & 63);
+            long old;
+            while (((old = words.get(w)) & mask) != 0 && !words.compareAndSet(w, old, old & ~mask)) { }
+        }
+
+        private AtomicLongArray pageFor(int bit) {
+            int page = bit >>> PAGE_BITS;
+            AtomicLongArray[] p = pages;
+            if (page < p.length) return p[page];
+            synchronized (this) {
+                p = pages;
+                if (page >= p.length) {
+                    AtomicLongArray[] grown = Arrays.copyOf(p, page + 1);
+                    for (int i = p.length; i < grown.length; i++) grown[i] = new AtomicLongArray(WORDS_PER_PAGE);
+                    pages = grown;
+                    p = grown;
+                }
+                return p[page];
+            }
+        }
+    }
+}
+
+// Filter over the fleet; unset criteria match everything
+class FleetQuery {
+    private boolean availableOnly;
+    private String model;
+    private Boolean luxury;
+    private double maxPrice = Double.NaN;
+
+    public static FleetQuery all() { return new FleetQuery(); }
+    public static FleetQuery available() { return new FleetQuery().availableOnly(true); }
+
+    public FleetQuery availableOnly(boolean availableOnly) { this.availableOnly = availableOnly; return this; }
+    public FleetQuery model(String model) { this.model = model; return this; }
+    public FleetQuery luxury(boolean luxury) { this.luxury = luxury; return this; }
+    public FleetQuery maxPricePerDay(double maxPrice) { this.maxPrice = maxPrice; return this; }
+
+    public boolean isAvailableOnly() { return availableOnly; }
+    public String getModel() { return model; }
+    public Boolean getLuxury() { return luxury; }
+    public double getMaxPrice() { return maxPrice; }
+}
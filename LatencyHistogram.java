@@ -0,0 +1,73 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram in nanoseconds, laid out like HdrHistogram: values below 32
+// get a bucket each, and every power of two above is split into 32 equal buckets, so any
+// value from 1 ns to centuries lands in a bucket within ~3% of it. record() only does
+// atomic adds on a preallocated array and LongAdders (which add a cell the first time
+// threads contend), so in steady state it neither allocates nor blocks.
+public final class LatencyHistogram {
+    static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS; // up to Long.MAX_VALUE
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.getAndIncrement(index(nanos));
+        count.increment();
+        total.add(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+    }
+
+    public long count() { return count.sum(); }
+
+    public long max() { return max.get(); }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    // Copies the buckets once and reads several percentiles (0-100) from the copy;
+    // the results are bucket upper bounds, never above the recorded max
+    public long[] percentiles(double... ps) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += snapshot[i] = counts.get(i);
+        long[] values = new long[ps.length];
+        long m = max.get();
+        for (int p = 0; p < ps.length; p++) {
+            long rank = Math.max(1, (long) Math.ceil(ps[p] / 100 * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    values[p] = Math.min(m, i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE);
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+    static int index(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int index) {
+        int bucket = index >>> SUB_BITS, sub = index & (SUB_BUCKETS - 1);
+        return bucket == 0 ? sub : (long) (SUB_BUCKETS + sub) << (bucket - 1);
+    }
+}
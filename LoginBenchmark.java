@@ -0,0 +1,279 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measurements for the login path. Run with a mode:
+//
+//   java -cp out LoginBenchmark hashing [costs] [logins]
+//       Per PBKDF2 cost: single login latency, throughput of a burst of concurrent logins
+//       through the hashing pool, and latency of a cached (recently verified) login.
+//
+//   java -cp out LoginBenchmark auth [users] [clients] [logins] [cost]
+//       Load test of AuthService: writes and reloads a user file, then `clients` threads
+//       run `logins` logins (90% right password, 5% wrong, 5% unknown user) and the
+//       p50/p99 latency is reported, first with an empty verification cache, then warm.
+//
+//   java -cp out LoginBenchmark ratelimit [attempts] [sources] [threads] [maxKeys]
+//       Credential-stuffing flood: every attempt uses a new username, from a pool of
+//       sources. Reports the latency of the throttle decision, how many were refused, and
+//       the limiter size/heap, which stays bounded by maxKeys.
+//
+//   java -cp out LoginBenchmark sessions [count]
+//       Issues `count` session tokens, measures token validation latency, then moves a
+//       simulated clock forward and compares timing-wheel expiry with a full scan, and
+//       times saving/loading the session file.
+public class LoginBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "hashing";
+        switch (mode) {
+            case "hashing":
+                hashing(args.length > 1 ? args[1] : "10000,50000,100000,210000,600000",
+                        args.length > 2 ? Integer.parseInt(args[2]) : 40);
+                break;
+            case "auth":
+                auth(args.length > 1 ? Integer.parseInt(args[1]) : 10_000,
+                     args.length > 2 ? Integer.parseInt(args[2]) : 1000,
+                     args.length > 3 ? Integer.parseInt(args[3]) : 20_000,
+                     args.length > 4 ? Integer.parseInt(args[4]) : 1000);
+                break;
+            case "ratelimit":
+                rateLimit(args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000,
+                          args.length > 2 ? Integer.parseInt(args[2]) : 10_000,
+                          args.length > 3 ? Integer.parseInt(args[3]) : 4,
+                          args.length > 4 ? Integer.parseInt(args[4]) : 1_000_000);
+                break;
+            case "sessions":
+                sessions(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                break;
+            default:
+                System.out.println("Unknown mode: " + mode);
+        }
+    }
+
+    static void hashing(String costs, int logins) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = Math.max(1, cores / 2);
+        int callers = 4 * cores;
+        System.out.printf("cores=%d hashing threads=%d concurrent callers=%d%n", cores, threads, callers);
+        System.out.printf("%10s %12s %12s %14s %14s %12s%n",
+                "cost", "p50 ms", "p99 ms", "burst logins/s", "burst p99 ms", "cached us");
+        // Let the JIT compile the HMAC loop first, or the first cost pays for it
+        String warm = new PasswordHasher(10_000, 1, 0, 0).hash("warm-up");
+        for (int i = 0; i < 50; i++) PasswordHasher.verifyNow("wrong", warm);
+        for (String c : costs.split(",")) {
+            int cost = Integer.parseInt(c.trim());
+            PasswordHasher hasher = new PasswordHasher(cost, threads, 1000, 60_000);
+            User user = new User("testuser", "secret123", hasher);
+
+            // Sequential wrong passwords, so every check is a full hash
+            long[] single = new long[logins];
+            for (int i = 0; i < logins; i++) {
+                long start = System.nanoTime();
+                user.validate("testuser", "wrong" + i, hasher);
+                single[i] = System.nanoTime() - start;
+            }
+
+            // A burst from many callers; the pool keeps at most `threads` hashes running
+            ExecutorService clients = Executors.newFixedThreadPool(callers);
+            long[] burst = new long[logins * 2];
+            CountDownLatch done = new CountDownLatch(burst.length);
+            long burstStart = System.nanoTime();
+            for (int i = 0; i < burst.length; i++) {
+                int n = i;
+                clients.execute(() -> {
+                    long start = System.nanoTime();
+                    user.validate("testuser", "wrong" + n, hasher);
+                    burst[n] = System.nanoTime() - start;
+                    done.countDown();
+                });
+            }
+            done.await();
+            long burstNanos = System.nanoTime() - burstStart;
+            clients.shutdown();
+
+            // Repeated successful login served from the verification cache
+            if (!user.validate("testuser", "secret123", hasher)) throw new AssertionError("login failed");
+            int cachedRuns = 100_000;
+            long start = System.nanoTime();
+            for (int i = 0; i < cachedRuns; i++) user.validate("testuser", "secret123", hasher);
+            double cachedMicros = (System.nanoTime() - start) / 1e3 / cachedRuns;
+
+            System.out.printf("%10d %12.2f %12.2f %14.1f %14.2f %12.2f%n", cost,
+                    percentile(single, 50) / 1e6, percentile(single, 99) / 1e6,
+                    burst.length * 1e9 / burstNanos, percentile(burst, 99) / 1e6, cachedMicros);
+            hasher.shutdown();
+        }
+    }
+
+    static void auth(int userCount, int clients, int logins, int cost) throws Exception {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        PasswordHasher hasher = new PasswordHasher(cost, threads, userCount * 2, 600_000);
+        long start = System.nanoTime();
+        UserStore created = new UserStore(userCount);
+        for (int i = 0; i < userCount; i++) created.add(new User("user" + i, "pw" + i, hasher));
+        System.out.printf("hashed %,d users at cost %d in %d ms%n", userCount, cost, (System.nanoTime() - start) / 1_000_000);
+
+        Path file = Files.createTempFile("users", ".txt");
+        created.save(file);
+        start = System.nanoTime();
+        UserStore users = UserStore.load(file);
+        System.out.printf("loaded %,d users from %s (%,d bytes) in %d ms%n", users.size(), file,
+                Files.size(file), (System.nanoTime() - start) / 1_000_000);
+        Files.delete(file);
+
+        AuthService auth = new AuthService(users, hasher);
+        for (String pass : new String[] { "cold", "warm" }) {
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            long[] latencies = new long[logins];
+            AtomicInteger failures = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(logins);
+            long passStart = System.nanoTime();
+            for (int i = 0; i < logins; i++) {
+                int n = i;
+                pool.execute(() -> {
+                    int u = (int) ((n * 2654435761L) % userCount);
+                    int kind = n % 20;
+                    String username = kind == 19 ? "nobody" + n : "user" + u;
+                    String password = kind == 18 ? "wrong" : "pw" + u;
+                    long t = System.nanoTime();
+                    boolean ok = auth.validate(username, password);
+                    latencies[n] = System.nanoTime() - t;
+                    if (ok != kind < 18) failures.incrementAndGet();
+                    done.countDown();
+                });
+            }
+            done.await();
+            long passNanos = System.nanoTime() - passStart;
+            pool.shutdown();
+            System.out.printf("%s: %,d logins from %d clients, %,.0f logins/s, p50 %.3f ms, p99 %.3f ms, max %.3f ms, wrong results %d%n",
+                    pass, logins, clients, logins * 1e9 / passNanos, percentile(latencies, 50) / 1e6,
+                    percentile(latencies, 99) / 1e6, percentile(latencies, 100) / 1e6, failures.get());
+        }
+        hasher.shutdown();
+    }
+
+    static void rateLimit(int attempts, int sources, int threads, int maxKeys) throws Exception {
+        RateLimiter perUser = new RateLimiter(5, 1.0 / 60, maxKeys);
+        RateLimiter perSource = new RateLimiter(50, 1, maxKeys);
+        String[] sourceNames = new String[sources];
+        for (int i = 0; i < sources; i++) sourceNames[i] = "10.0." + (i >> 8) + "." + (i & 255);
+        long heapBefore = usedHeap();
+
+        for (String pass : new String[] { "warm-up", "flood" }) {
+            int perThread = attempts / threads;
+            long[][] latencies = new long[threads][perThread];
+            int[] refused = new int[threads];
+            Thread[] workers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                workers[t] = new Thread(() -> {
+                    long[] lat = latencies[id];
+                    for (int i = 0; i < perThread; i++) {
+                        String username = pass + "-" + id + "-" + i;
+                        String source = sourceNames[(i * 31 + id) % sources];
+                        long t0 = System.nanoTime();
+                        boolean allowed = perSource.tryAcquire(source) && perUser.tryAcquire(username);
+                        lat[i] = System.nanoTime() - t0;
+                        if (!allowed) refused[id]++;
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread w : workers) w.join();
+            long elapsed = System.nanoTime() - start;
+
+            long[] all = new long[perThread * threads];
+            int refusedTotal = 0;
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(latencies[t], 0, all, t * perThread, perThread);
+                refusedTotal += refused[t];
+            }
+            System.out.printf("%s: %,d attempts, %d threads, %,.0f decisions/s, p50 %d ns, p99 %d ns, p99.9 %d ns, refused %,d%n",
+                    pass, all.length, threads, all.length * 1e9 / elapsed, percentile(all, 50), percentile(all, 99),
+                    percentile(all, 99.9), refusedTotal);
+        }
+        System.out.printf("limiter keys: users %,d, sources %,d; heap growth %,d MB%n",
+                perUser.size(), perSource.size(), (usedHeap() - heapBefore) >> 20);
+    }
+
+    static void sessions(int count) throws Exception {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        long idle = TimeUnit.MINUTES.toMillis(30);
+        SessionStore store = new SessionStore(idle, TimeUnit.HOURS.toMillis(8), 1000, now::get);
+        String[] tokens = new String[count];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) tokens[i] = store.create("user" + (i % 10_000));
+        System.out.printf("created %,d sessions in %d ms%n", count, (System.nanoTime() - start) / 1_000_000);
+
+        long[] latencies = new long[Math.min(count, 1_000_000)];
+        for (int i = 0; i < latencies.length; i++) {
+            String token = tokens[(int) ((i * 2654435761L) % count)];
+            long t0 = System.nanoTime();
+            Session s = store.validate(token);
+            latencies[i] = System.nanoTime() - t0;
+            if (s == null) throw new AssertionError("valid token rejected");
+        }
+        System.out.printf("validate: p50 %d ns, p99 %d ns%n", percentile(latencies, 50), percentile(latencies, 99));
+
+        // Half the sessions stay in use, the rest go idle
+        now.addAndGet(TimeUnit.MINUTES.toMillis(20));
+        for (int i = 0; i < count; i += 2) store.validate(tokens[i]);
+
+        long scanNanos = 0, wheelNanos = 0;
+        int expired = 0;
+        for (int minute = 0; minute < 15; minute++) {
+            now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+            scanNanos += scan(store);
+            long t0 = System.nanoTime();
+            expired += store.expire();
+            wheelNanos += System.nanoTime() - t0;
+        }
+        System.out.printf("15 simulated minutes: wheel expired %,d sessions in %d ms total (%d ns each); "
+                        + "a full scan every minute would cost %d ms%n", expired, wheelNanos / 1_000_000,
+                wheelNanos / Math.max(1, expired), scanNanos / 1_000_000);
+        if (store.size() != count - expired || store.validate(tokens[1]) != null || store.validate(tokens[0]) == null)
+            throw new AssertionError("wrong sessions expired");
+
+        Path file = Files.createTempFile("sessions", ".bin");
+        start = System.nanoTime();
+        store.save(file);
+        long saved = System.nanoTime() - start;
+        SessionStore reloaded = new SessionStore(idle, TimeUnit.HOURS.toMillis(8), 1000, now::get);
+        start = System.nanoTime();
+        int loaded = reloaded.load(file);
+        System.out.printf("saved %,d sessions (%,d bytes) in %d ms, loaded in %d ms%n", loaded, Files.size(file),
+                saved / 1_000_000, (System.nanoTime() - start) / 1_000_000);
+        if (reloaded.validate(tokens[0]) == null) throw new AssertionError("session lost on reload");
+        Files.delete(file);
+    }
+
+    static int scanned;
+
+    // Time a periodic full scan for expired sessions would take (without removing anything)
+    static long scan(SessionStore store) {
+        long t0 = System.nanoTime();
+        int[] due = new int[1];
+        long limit = System.currentTimeMillis();
+        store.forEach(s -> { if (s.getLastAccessMillis() > limit) due[0]++; });
+        scanned += due[0];
+        return System.nanoTime() - t0;
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static long percentile(long[] samples, double p) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Line-oriented login input. With a real terminal it goes through java.io.Console, whose
+// readPassword doesn't echo at all. Otherwise (pipes, scripts, IDE consoles) it reads whole
+// UTF-8 lines through one buffered reader, so usernames and passwords come from the same
+// buffer and multi-byte characters survive. Echo can't be turned off without a Console, so
+// in interactive mode the user is warned that the password will be visible as typed.
+class LoginInput implements Closeable {
+    private final Console console;
+    private final BufferedReader reader;
+    private final PrintStream out;
+    private final boolean interactive;
+    private boolean warned;
+
+    private LoginInput(Console console, BufferedReader reader, PrintStream out, boolean interactive) {
+        this.console = console;
+        this.reader = reader;
+        this.out = out;
+        this.interactive = interactive;
+    }
+
+    // Reads from the terminal when there is one, otherwise from System.in
+    public static LoginInput system(boolean interactive) {
+        Console console = System.console();
+        if (console != null && interactive) return new LoginInput(console, null, System.out, true);
+        return of(System.in, System.out, interactive);
+    }
+
+    // Reads `in` as UTF-8; prompts and the echo warning go to `out` only if `interactive`
+    public static LoginInput of(InputStream in, PrintStream out, boolean interactive) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        return new LoginInput(null, reader, out, interactive);
+    }
+
+    // The next line, or null at end of input
+    public String readLine(String prompt) throws IOException {
+        if (console != null) return console.readLine("%s", prompt);
+        prompt(prompt);
+        return reader.readLine();
+    }
+
+    public String readPassword(String prompt) throws IOException {
+        if (console != null) {
+            char[] password = console.readPassword("%s", prompt);
+            return password == null ? null : new String(password);
+        }
+        prompt(prompt);
+        String line = reader.readLine();
+        return line == null ? null : applyBackspaces(line);
+    }
+
+    private void prompt(String prompt) {
+        if (!interactive) return;
+        if (!warned) {
+            out.println("Warning: no terminal available, passwords will be shown as you type them.");
+            warned = true;
+        }
+        out.print(prompt);
+    }
+
+    // Terminals that aren't in line-editing mode pass Backspace/Delete through; each one
+    // removes the whole preceding character, including both halves of a surrogate pair
+    static String applyBackspaces(String line) {
+        if (line.indexOf('\b') < 0 && line.indexOf(127) < 0) return line;
+        StringBuilder sb = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); ) {
+            int cp = line.codePointAt(i);
+            i += Character.charCount(cp);
+            if (cp == '\b' || cp == 127) {
+                if (sb.length() > 0) sb.setLength(sb.offsetByCodePoints(sb.length(), -1));
+            } else {
+                sb.appendCodePoint(cp);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) reader.close();
+    }
+}
@@ -1,81 +1,172 @@
 
 
-import java.io.IOException;
-import java.util.Scanner;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
 
 
-// Class representing a user with username and password
+// Class representing a user with username and a salted password hash
 class User {
     private String username;
-    private String password;
+    private String passwordHash;
 
-    // Constructor
+    // Constructor; the password is hashed right away and never stored
     public User(String username, String password) {
+        this(username, password, PasswordHasher.getDefault());
+    }
+
+    public User(String username, String password, PasswordHasher hasher) {
         this.username = username;
-        this.password = password;
+        this.passwordHash = hasher.hash(password);
+    }
+
+    private User(String username) {
+        this.username = username;
+    }
+
+    // For credentials that were hashed earlier (e.g. loaded from a file)
+    static User withHash(String username, String passwordHash) {
+        User user = new User(username);
+        user.passwordHash = passwordHash;
+        return user;
     }
 
-    // Method to check credentials
+    public String getUsername() { return username; }
+
+    String getPasswordHash() { return passwordHash; }
+
+    // Method to check credentials; both parts are always checked so a wrong username
+    // takes as long as a wrong password
     public boolean validate(String username, String password) {
-        return this.username.equals(username) && this.password.equals(password);
+        return validate(username, password, PasswordHasher.getDefault());
+    }
+
+    public boolean validate(String username, String password, PasswordHasher hasher) {
+        boolean nameMatches = PasswordHasher.constantTimeEquals(this.username, username);
+        boolean passwordMatches = hasher.verify(this.username, password, passwordHash);
+        return nameMatches & passwordMatches;
     }
 }
 
 public class LoginSystemJava {
 
-    // Reads password from console and displays '*' for each character
-    public static String readPasswordWithMasking() {
-        StringBuilder password = new StringBuilder();
+    // Authenticates "username:password" lines from `in` and writes "OK username" or
+    // "FAIL username" per line to `out`, in input order. Checks run concurrently through the
+    // hashing pool, with a bounded window of lines in flight. Returns {ok, failed}.
+    static int[] runBatch(AuthService auth, BufferedReader in, Writer out) throws IOException, InterruptedException {
+        int window = 256;
+        ExecutorService workers = Executors.newFixedThreadPool(
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        ArrayDeque<String> names = new ArrayDeque<>();
+        ArrayDeque<Future<Boolean>> results = new ArrayDeque<>();
+        int[] counts = new int[2];
         try {
-            while (true) {
-                int ch = System.in.read();
-                if (ch == '\n' || ch == '\r') {
-                    System.out.println(); // Move to next line after Enter
-                    break;
-                }
-                if (ch == 127 || ch == 8) { // Handle Backspace
-                    if (password.length() > 0) {
-                        password.deleteCharAt(password.length() - 1);
-                        System.out.print("\b \b");
-                    }
-                } else {
-                    password.append((char) ch);
-                    System.out.print("*");
-                }
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                int sep = line.indexOf(':');
+                String username = sep < 0 ? line : line.substring(0, sep);
+                String password = sep < 0 ? "" : line.substring(sep + 1);
+                names.add(username);
+                results.add(workers.submit(() -> auth.validate(username, password)));
+                if (results.size() >= window) writeResult(names, results, out, counts);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            while (!results.isEmpty()) writeResult(names, results, out, counts);
+        } finally {
+            workers.shutdownNow();
         }
-        return password.toString();
+        out.flush();
+        return counts;
     }
 
-    public static void main(String[] args) {
-        User user = new User("testuser", "secret123");
-        Scanner scanner = new Scanner(System.in);
+    private static void writeResult(ArrayDeque<String> names, ArrayDeque<Future<Boolean>> results, Writer out,
+                                    int[] counts) throws IOException, InterruptedException {
+        boolean ok;
+        try {
+            ok = results.poll().get();
+        } catch (ExecutionException e) {
+            ok = false;
+        }
+        counts[ok ? 0 : 1]++;
+        out.write(ok ? "OK " : "FAIL ");
+        out.write(names.poll());
+        out.write('\n');
+    }
 
-        int attempts = 0;
+    // Users come from the file given as the first argument (default users.txt, see UserStore);
+    // without one there is just the demo user. Sessions are kept in the file given as the
+    // second argument, if any, and a token in LOGIN_SESSION skips the password.
+    //
+    // Non-interactive mode: --batch <credentials file, or - for stdin> [users file]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            if (args.length < 2) {
+                System.err.println("--batch needs a credentials file, or - for stdin");
+                System.exit(2);
+            }
+            Path usersFile = Paths.get(args.length > 2 ? args[2] : "users.txt");
+            AuthService auth = new AuthService(Files.exists(usersFile) ? UserStore.load(usersFile) : new UserStore());
+            InputStream in = args[1].equals("-") ? System.in : Files.newInputStream(Paths.get(args[1]));
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            long start = System.nanoTime();
+            int[] counts;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+                counts = runBatch(auth, reader, out);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("%d ok, %d failed, %.0f logins/s%n", counts[0], counts[1], (counts[0] + counts[1]) / seconds);
+            System.exit(counts[1] == 0 ? 0 : 1);
+        }
+
+        Path usersFile = Paths.get(args.length > 0 ? args[0] : "users.txt");
+        UserStore users = Files.exists(usersFile) ? UserStore.load(usersFile) : new UserStore();
+        AuthService auth = new AuthService(users);
+        if (users.size() == 0) auth.register("testuser", "secret123");
+
+        Path sessionsFile = args.length > 1 ? Paths.get(args[1]) : null;
+        SessionStore sessions = new SessionStore(TimeUnit.MINUTES.toMillis(30), TimeUnit.HOURS.toMillis(8));
+        if (sessionsFile != null && Files.exists(sessionsFile)) sessions.load(sessionsFile);
+        Session resumed = sessions.validate(System.getenv("LOGIN_SESSION"));
+        if (resumed != null) {
+            System.out.println("Welcome back, " + resumed.getUsername() + ".");
+            if (sessionsFile != null) sessions.save(sessionsFile);
+            return;
+        }
+        LoginInput input = LoginInput.system(true);
+
+        // Attempts are limited per username and per source by the AuthService rate limiters
         final int MAX_ATTEMPTS = 3;
+        final String source = "console:" + System.getProperty("user.name");
+        auth.setRateLimits(new RateLimiter(MAX_ATTEMPTS, 1.0 / 60, 100_000), new RateLimiter(20, 1.0 / 10, 1000));
         boolean loggedIn = false;
 
-        while (attempts < MAX_ATTEMPTS && !loggedIn) {
-            System.out.print("Enter Username: ");
-            String inputUsername = scanner.nextLine();
-
-            System.out.print("Enter Password: ");
-            String inputPassword = readPasswordWithMasking();
+        while (!loggedIn) {
+            String inputUsername = input.readLine("Enter Username: ");
+            if (inputUsername == null) break;
+            String inputPassword = input.readPassword("Enter Password: ");
+            if (inputPassword == null) break;
 
-            if (user.validate(inputUsername, inputPassword)) {
+            LoginResult result = auth.login(inputUsername, inputPassword, source);
+            if (result == LoginResult.SUCCESS) {
                 System.out.println("Login successful! Welcome, " + inputUsername + ".");
+                String token = sessions.create(inputUsername);
+                System.out.println("Session token: " + token);
+                if (sessionsFile != null) sessions.save(sessionsFile);
                 loggedIn = true;
             } else {
-                attempts++;
-                if (attempts < MAX_ATTEMPTS) {
-                    System.out.println(" Incorrect username or password. Try again (" + (MAX_ATTEMPTS - attempts) + " attempts left).");
+                long wait = auth.retryAfterMillis(inputUsername, source);
+                if (wait == 0) {
+                    System.out.println(" Incorrect username or password. Try again.");
                 } else {
-                    System.out.println(" Too many failed attempts. Your account is locked.");
+                    System.out.println(" Too many failed attempts. Try again in " + (wait + 999) / 1000 + " seconds.");
+                    break;
                 }
             }
         }
-        scanner.close();
+        input.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-operation timing shared by the rental, login and registration code. Call sites keep
+// a Timer in a static final field and wrap the operation:
+//
+//   long t = TIMER.start();
+//   ... operation ...
+//   TIMER.stop(t, succeeded);
+//
+// which costs two nanoTime() reads and a few atomic adds, and allocates nothing once warm
+// (unless metrics.jfr is on). That is a lot next to a sub-microsecond operation such as a
+// car rental, so such timers are sampled: timer(name, 64) times one call in 64 at random.
+// Only the latency histogram (and the JFR event) is sampled; calls and failures are
+// counted exactly on every call, at the cost of one LongAdder add.
+//
+// Configured with system properties:
+//   -Dmetrics.enabled=false    turns the timers into no-ops
+//   -Dmetrics.jfr=true         also emits a metrics.Operation JFR event per call (seen by a
+//                              running flight recording, e.g. -XX:StartFlightRecording)
+//   -Dmetrics.dump=file        writes every timer to `file` every metrics.period seconds
+//                              (default 10) and at exit, as text or, for a .json file, JSON
+public final class Metrics {
+    static final boolean ENABLED = !"false".equals(System.getProperty("metrics.enabled"));
+    static final boolean JFR = Boolean.getBoolean("metrics.jfr");
+    static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService dumper;
+    private static Path dumpFile;
+    private static boolean dumpJson;
+
+    static {
+        String dump = System.getProperty("metrics.dump");
+        if (ENABLED && dump != null) {
+            startDump(Paths.get(dump), Long.getLong("metrics.period", 10) * 1000, dump.endsWith(".json"));
+        }
+    }
+
+    private Metrics() { }
+
+    public static final class Timer {
+        final String name;
+        final int sampleMask; // a call is timed when a random int & sampleMask is 0
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        private long reportedCount; // as of the previous report, for the interval rate
+        private long reportedAt = System.nanoTime();
+
+        Timer(String name, int sampleEvery) {
+            if (Integer.bitCount(sampleEvery) != 1) throw new IllegalArgumentException("sampleEvery: " + sampleEvery);
+            this.name = name;
+            this.sampleMask = sampleEvery - 1;
+        }
+
+        // 0 if this call isn't timed (metrics disabled, or not sampled); pass it to stop()
+        // either way so the call is counted
+        public long start() {
+            if (!ENABLED || (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)) return 0;
+            return System.nanoTime();
+        }
+
+        public void stop(long start) {
+            stop(start, true);
+        }
+
+        // `ok` false counts the call as a failure (an error, or e.g. no car to rent); it is
+        // timed either way
+        public void stop(long start, boolean ok) {
+            if (!ENABLED) return;
+            calls.increment();
+            if (!ok) failures.increment();
+            if (start == 0) return;
+            long nanos = System.nanoTime() - start;
+            latency.record(nanos);
+            if (JFR) OperationEvent.emit(name, nanos, ok);
+        }
+
+        public long count() { return calls.sum(); }
+
+        public long failures() { return failures.sum(); }
+
+        public LatencyHistogram latency() { return latency; }
+    }
+
+    // The timer called `name`, created on first use; every call is timed
+    public static Timer timer(String name) {
+        return timer(name, 1);
+    }
+
+    // The same, timing one call in `sampleEvery` (a power of two)
+    public static Timer timer(String name, int sampleEvery) {
+        return timers.computeIfAbsent(name, n -> new Timer(n, sampleEvery));
+    }
+
+    // One line per timer: calls, failures, calls/s since the previous report, and latency
+    public static synchronized void report(Appendable out) throws IOException {
+        long now = System.nanoTime();
+        for (Timer t : timers.values()) {
+            long count = t.count();
+            long[] p = t.latency.percentiles(PERCENTILES);
+            out.append(String.format("%-24s %,12d calls %,8d failed %,12.1f/s  mean %,10.1f  p50 %,10.1f  p90 %,10.1f"
+                            + "  p99 %,10.1f  p99.9 %,10.1f  max %,10.1f us%n",
+                    t.name, count, t.failures(), rate(t, count, now), t.latency.mean() / 1e3,
+                    p[0] / 1e3, p[1] / 1e3, p[2] / 1e3, p[3] / 1e3, t.latency.max() / 1e3));
+        }
+    }
+
+    // The same as report(), as a JSON object keyed by timer name; times in microseconds
+    public static synchronized void reportJson(Appendable out) throws IOException {
+        long now = System.nanoTime();
+        out.append("{\"time\":").append(Long.toString(System.currentTimeMillis())).append(",\"timers\":{");
+        boolean first = true;
+        for (Timer t : timers.values()) {
+            long count = t.count();
+            long[] p = t.latency.percentiles(PERCENTILES);
+            if (!first) out.append(',');
+            first = false;
+            out.append(String.format(java.util.Locale.ROOT,
+                    "\n\"%s\":{\"count\":%d,\"failures\":%d,\"perSecond\":%.1f,\"meanUs\":%.3f,\"p50Us\":%.3f,"
+                            + "\"p90Us\":%.3f,\"p99Us\":%.3f,\"p999Us\":%.3f,\"maxUs\":%.3f}",
+                    t.name.replace("\\", "\\\\").replace("\"", "\\\""), count, t.failures(), rate(t, count, now),
+                    t.latency.mean() / 1e3, p[0] / 1e3, p[1] / 1e3, p[2] / 1e3, p[3] / 1e3, t.latency.max() / 1e3));
+        }
+        out.append("\n}}\n");
+    }
+
+    // Writes a report to `file` every `periodMillis` and once more at exit; each write
+    // replaces the file whole, so a reader never sees half a report
+    public static synchronized void startDump(Path file, long periodMillis, boolean json) {
+        if (dumper == null) Runtime.getRuntime().addShutdownHook(new Thread(Metrics::dump, "metrics-dump-exit"));
+        else dumper.shutdownNow();
+        dumpFile = file;
+        dumpJson = json;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(Metrics::dump, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized void dump() {
+        try {
+            dump(dumpFile, dumpJson);
+        } catch (IOException e) {
+            System.err.println("metrics: cannot write " + dumpFile + ": " + e);
+        }
+    }
+
+    static void dump(Path file, boolean json) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            if (json) reportJson(out);
+            else report(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static double rate(Timer t, long count, long now) {
+        double seconds = (now - t.reportedAt) / 1e9;
+        double rate = seconds <= 0 ? 0 : (count - t.reportedCount) / seconds;
+        t.reportedCount = count;
+        t.reportedAt = now;
+        return rate;
+    }
+
+    // Only loaded when metrics.jfr is set
+    @jdk.jfr.Name("metrics.Operation")
+    @jdk.jfr.Label("Operation")
+    @jdk.jfr.Category("Application")
+    @jdk.jfr.StackTrace(false)
+    static final class OperationEvent extends jdk.jfr.Event {
+        @jdk.jfr.Label("Operation")
+        String operation;
+
+        @jdk.jfr.Label("Time")
+        @jdk.jfr.Timespan
+        long nanos;
+
+        @jdk.jfr.Label("Succeeded")
+        boolean ok;
+
+        static void emit(String operation, long nanos, boolean ok) {
+            OperationEvent e = new OperationEvent();
+            if (!e.isEnabled()) return;
+            e.operation = operation;
+            e.nanos = nanos;
+            e.ok = ok;
+            e.commit();
+        }
+    }
+}
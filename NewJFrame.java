@@ -1,36 +1,116 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.sql.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class NewJFrame extends javax.swing.JFrame {
     JTextField nameField;
-    TextArea displayField;
+    JTable displayTable;
     JRadioButton maleBtn, femaleBtn;
     JCheckBox termsBox;
     JButton submitBtn, resetBtn, showBtn;
     
 JTextField contactField;
 
+    // All database work runs here, off the Event Dispatch Thread, one task at a time so an
+    // insert and the reload after it stay in order
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "registration-db");
+        t.setDaemon(true);
+        return t;
+    });
+    // CSV imports get their own thread (and pooled connection), so a long import doesn't hold
+    // up page fetches and saves queued on dbExecutor
+    private final ExecutorService importExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "registration-import");
+        t.setDaemon(true);
+        return t;
+    });
+    private final JProgressBar busyBar = new JProgressBar();
+    private int pendingTasks;
+
+    // Registered users, read a page at a time as the table scrolls (see UserTableModel)
+    static final int PAGE_SIZE = Integer.getInteger("users.pageSize", 200);
+    // Users already read or saved, by id, so a save or a search doesn't read them again
+    private final UserCache userCache = new UserCache(Integer.getInteger("users.cacheSize", 100_000));
+    private final UserTableModel usersModel = new UserTableModel(dbExecutor, PAGE_SIZE, 50, userCache);
+
+    // Search box: queries run on their own thread so typing never waits behind an insert or
+    // page fetch; the in-memory index answers once loaded, the name/contact indexes until then
+    static final int SEARCH_LIMIT = 200;
+    static final int SEARCH_DELAY_MS = 150;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "registration-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private final JTextField searchField = new JTextField(15);
+    private final Timer searchTimer = new Timer(SEARCH_DELAY_MS, e -> runSearch());
+    private volatile UserSearchIndex searchIndex;
+    private final java.util.List<Object[]> addedWhileLoading = new java.util.ArrayList<>(); // EDT only
+    private int searchSeq; // bumped per search so a slower, older result is dropped
+
     public NewJFrame() {
         initComponents();
 
         // Link GUI builder components
         nameField = jTextField1;
         contactField = jTextField2;
-        displayField = textArea2;
+        displayTable = jTable1;
+        displayTable.setModel(usersModel);
+        usersModel.refresh();
         maleBtn = jRadioButton1;
         femaleBtn = jRadioButton2;
         termsBox = jCheckBox1;
       
         submitBtn = jButton1;
         resetBtn = jButton2;
-
+        showBtn = jButton3;
+
+        // Busy indicator along the bottom of the window, on the glass pane so the
+        // generated layout stays untouched; it has no mouse listeners, so clicks pass through
+        busyBar.setIndeterminate(true);
+        busyBar.setVisible(false);
+        JPanel glass = (JPanel) getGlassPane();
+        glass.setLayout(new BorderLayout());
+        glass.add(busyBar, BorderLayout.SOUTH);
+        glass.setVisible(true);
      
         // Button actions
         submitBtn.addActionListener(e -> handleSubmit());
         resetBtn.addActionListener(e -> handleReset());
+        showBtn.addActionListener(e -> displayRecords());
+
+        JMenuBar menuBar = new JMenuBar();
+        JMenu fileMenu = new JMenu("File");
+        JMenuItem importItem = new JMenuItem("Import CSV…");
+        importItem.addActionListener(e -> handleImport());
+        fileMenu.add(importItem);
+        menuBar.add(fileMenu);
+        menuBar.add(Box.createHorizontalGlue());
+        menuBar.add(new JLabel("Search: "));
+        searchField.setMaximumSize(searchField.getPreferredSize());
+        menuBar.add(searchField);
+        setJMenuBar(menuBar);
+
+        // Waits for a pause in typing rather than searching on every keystroke
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
+        });
+        loadSearchIndex();
 
       
     }
@@ -48,14 +128,179 @@ JTextField contactField;
             JOptionPane.showMessageDialog(this, "Please accept terms and conditions.");
             return;
         }
+        String error = checkFields(name, contact, gender, address);
+        if (error != null) {
+            JOptionPane.showMessageDialog(this, error);
+            return;
+        }
+
+        submitBtn.setEnabled(false);
+        runInBackground(() -> DBHelper.insertUser(name, contact, gender , address), id -> {
+            submitBtn.setEnabled(true);
+            showNotice("Data Saved Successfully.");
+            Object[] row = DBHelper.userRow(id, name, contact, gender, address);
+            userCache.put(row);
+            usersModel.rowAppended(row);
+            addToSearchIndex(id, name, contact);
+        }, "Error saving data: ", () -> submitBtn.setEnabled(true));
+    }
+
+    // Field rules shared by the form and the CSV import; returns the problem, or null if valid
+    static String checkFields(String name, String contact, String gender, String address) {
         if (name.isEmpty() || contact.isEmpty() || gender.isEmpty() || address.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please fill all fields.");
+            return "Please fill all fields.";
+        }
+        return null;
+    }
+
+    // Imports registrations from a CSV file (see UserImporter) on the import thread, with
+    // progress shown in the busy bar
+    void handleImport() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.nio.file.Path file = chooser.getSelectedFile().toPath();
+        int chunk = Integer.getInteger("import.chunkSize", UserImporter.DEFAULT_CHUNK);
+
+        setBusy(true);
+        busyBar.setIndeterminate(false);
+        busyBar.setStringPainted(true);
+        busyBar.setValue(0);
+        SwingWorker<UserImporter.Result, long[]> worker = new SwingWorker<UserImporter.Result, long[]>() {
+            @Override
+            protected UserImporter.Result doInBackground() throws Exception {
+                return new UserImporter(chunk).importFile(file, (imported, rejected, fraction) ->
+                        publish(new long[] { imported, rejected, Math.round(fraction * 100) }));
+            }
+
+            @Override
+            protected void process(java.util.List<long[]> updates) {
+                long[] last = updates.get(updates.size() - 1);
+                busyBar.setValue((int) last[2]);
+                busyBar.setString(String.format("Imported %,d rows (%,d rejected)", last[0], last[1]));
+            }
+
+            @Override
+            protected void done() {
+                busyBar.setIndeterminate(true);
+                busyBar.setStringPainted(false);
+                setBusy(false);
+                try {
+                    UserImporter.Result result = get();
+                    StringBuilder message = new StringBuilder(result.toString());
+                    for (int i = 0; i < Math.min(10, result.errors.size()); i++) message.append('\n').append(result.errors.get(i));
+                    showNotice(message.toString());
+                } catch (ExecutionException ex) {
+                    ex.getCause().printStackTrace();
+                    showNotice("Import failed: " + ex.getCause().getMessage());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                usersModel.refresh();
+                loadSearchIndex();
+            }
+        };
+        importExecutor.execute(worker);
+    }
+
+    // (Re)builds the search index in the background; searches use the database meanwhile.
+    // Registrations saved during the load are replayed into it, since the load's query may
+    // not have seen them.
+    void loadSearchIndex() {
+        searchIndex = null;
+        searchExecutor.execute(() -> {
+            DBHelper.ensureSearchIndexes();
+            try (Connection conn = DBHelper.getConnection()) {
+                UserSearchIndex loaded = UserSearchIndex.load(conn);
+                SwingUtilities.invokeLater(() -> {
+                    for (Object[] u : addedWhileLoading) loaded.add((Long) u[0], (String) u[1], (String) u[2]);
+                    addedWhileLoading.clear();
+                    searchIndex = loaded;
+                });
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void addToSearchIndex(long id, String name, String contact) {
+        UserSearchIndex index = searchIndex;
+        if (index != null) index.add(id, name, contact);
+        else addedWhileLoading.add(new Object[] { id, name, contact });
+    }
+
+    // Shows the users matching the search box, or all users again when it is empty
+    void runSearch() {
+        String text = searchField.getText().trim();
+        int seq = ++searchSeq;
+        if (text.isEmpty()) {
+            displayTable.setModel(usersModel);
             return;
         }
+        searchExecutor.execute(() -> {
+            java.util.List<Object[]> rows;
+            try {
+                UserSearchIndex index = searchIndex;
+                if (index != null) {
+                    rows = userCache.get(index.search(text, SEARCH_LIMIT));
+                } else {
+                    rows = DBHelper.searchUsers(text, SEARCH_LIMIT);
+                    userCache.putAll(rows);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (seq != searchSeq) return;
+                displayTable.setModel(new javax.swing.table.DefaultTableModel(
+                        rows.toArray(new Object[0][]), UserTableModel.COLUMNS) {
+                    @Override
+                    public boolean isCellEditable(int row, int column) { return false; }
+                });
+            });
+        });
+    }
+
+    // Runs `work` on the database thread, then `onSuccess` with its result on the EDT. On
+    // failure the error is shown with `errorPrefix` and `onFailure` runs, also on the EDT.
+    <T> void runInBackground(Callable<T> work, Consumer<T> onSuccess, String errorPrefix, Runnable onFailure) {
+        setBusy(true);
+        SwingWorker<T, Void> worker = new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                return work.call();
+            }
+
+            @Override
+            protected void done() {
+                setBusy(false);
+                try {
+                    onSuccess.accept(get());
+                } catch (ExecutionException ex) {
+                    ex.getCause().printStackTrace();
+                    if (onFailure != null) onFailure.run();
+                    showNotice(errorPrefix + ex.getCause().getMessage());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        dbExecutor.execute(worker);
+    }
 
-        DBHelper.insertUser(name, contact, gender , address);
-        JOptionPane.showMessageDialog(this, "Data Saved Successfully.");
-        loadDataIntoField();
+    // Outcome of background work, shown from done(). Not modal: a modal dialog would keep the
+    // EDT inside its own event loop until dismissed, in the middle of the worker's callback.
+    private void showNotice(String message) {
+        JDialog dialog = new JOptionPane(message, JOptionPane.INFORMATION_MESSAGE).createDialog(this, getTitle());
+        dialog.setModal(false);
+        dialog.setVisible(true);
+    }
+
+    private void setBusy(boolean busy) {
+        pendingTasks += busy ? 1 : -1;
+        boolean show = pendingTasks > 0;
+        busyBar.setVisible(show);
+        setCursor(show ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
     }
 
     void handleReset() {
@@ -63,67 +308,41 @@ JTextField contactField;
         nameField.setText("");
         contactField.setText("");
         jTextField3.setText("");
-        displayField.setText("");
+        displayTable.clearSelection();
         maleBtn.setSelected(false);
         femaleBtn.setSelected(false);
         termsBox.setSelected(false);
  
     }
 
+    // Reloads the row count; the visible rows are fetched again as the table repaints
     void loadDataIntoField() {
-        StringBuilder data = new StringBuilder();
-
-        try (Connection conn = DBHelper.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM users")) {
-
-            while (rs.next()) {
-                data.append("ID: ").append(rs.getInt("id"))
-                    .append(", Name: ").append(rs.getString("name"))
-                    .append(", Gender: ").append(rs.getString("gender"))
-                    .append(", Address: ").append(rs.getString("address"))
-                    .append(", contact: ").append(rs.getString("contact"))
-                    .append("\n");
-            }
-
-            displayField.setText(data.toString());
-
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading data: " + ex.getMessage());
-        }
+        usersModel.refresh();
     }
-    void displayRecords() {
-    try (Connection conn = DBHelper.getConnection();
-         Statement stmt = conn.createStatement();
-         ResultSet rs = stmt.executeQuery("SELECT * FROM users")) {
-
-        StringBuilder sb = new StringBuilder();
-        while (rs.next()) {
-            sb.append("Name: ").append(rs.getString("name"))
-              .append(", Gender: ").append(rs.getString("gender"))
-              .append(", address: ").append(rs.getString("address"))
-              .append(", contact ").append(rs.getString("contact"))
-              .append("\n");
-        }
-
-        textArea2.setText(sb.toString()); // Make sure jTextArea1 exists on your form
 
-    } catch (SQLException ex) {
-        JOptionPane.showMessageDialog(this, "Error fetching records: " + ex.getMessage());
+    void displayRecords() {
+        usersModel.refresh();
     }
-}
 
+    // --measure reports Event Dispatch Thread latency (see EdtMonitor) when the window closes
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(NewJFrame::new);
-    {
+        EdtMonitor monitor = args.length > 0 && args[0].equals("--measure") ? EdtMonitor.install() : null;
+        SwingUtilities.invokeLater(() -> {
             NewJFrame frame = new NewJFrame();
             frame.setTitle("Registration Form");
             frame.setSize(1000, 350); // Adjust size as needed
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.setLocationRelativeTo(null); // Center on screen
+            if (monitor != null) {
+                frame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        monitor.print(System.out);
+                    }
+                });
+            }
             frame.setVisible(true); // ✅ Make it visible
-        }
+        });
     }
 
 
@@ -144,7 +363,8 @@ JTextField contactField;
         jButton2 = new javax.swing.JButton();
         jButton3 = new javax.swing.JButton();
         jPanel1 = new javax.swing.JPanel();
-        textArea2 = new java.awt.TextArea();
+        jScrollPane1 = new javax.swing.JScrollPane();
+        jTable1 = new javax.swing.JTable();
         jLabel6 = new javax.swing.JLabel();
         jTextField4 = new javax.swing.JTextField();
         jTextField3 = new javax.swing.JTextField();
@@ -179,11 +399,8 @@ JTextField contactField;
 
         jButton3.setText("show records");
 
-        textArea2.addComponentListener(new java.awt.event.ComponentAdapter() {
-            public void componentHidden(java.awt.event.ComponentEvent evt) {
-                textArea2ComponentHidden(evt);
-            }
-        });
+        jTable1.setFillsViewportHeight(true);
+        jScrollPane1.setViewportView(jTable1);
 
         javax.swing.GroupLayout jPanel1Layout = new javax.swing.GroupLayout(jPanel1);
         jPanel1.setLayout(jPanel1Layout);
@@ -191,14 +408,14 @@ JTextField contactField;
             jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(jPanel1Layout.createSequentialGroup()
                 .addContainerGap()
-                .addComponent(textArea2, javax.swing.GroupLayout.PREFERRED_SIZE, 475, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addComponent(jScrollPane1, javax.swing.GroupLayout.PREFERRED_SIZE, 475, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addContainerGap(132, Short.MAX_VALUE))
         );
         jPanel1Layout.setVerticalGroup(
             jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(jPanel1Layout.createSequentialGroup()
                 .addContainerGap()
-                .addComponent(textArea2, javax.swing.GroupLayout.PREFERRED_SIZE, 219, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addComponent(jScrollPane1, javax.swing.GroupLayout.PREFERRED_SIZE, 219, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addContainerGap(195, Short.MAX_VALUE))
         );
 
@@ -309,10 +526,6 @@ JTextField contactField;
         // TODO add your handling code here:
     }//GEN-LAST:event_jTextField1ActionPerformed
 
-    private void textArea2ComponentHidden(java.awt.event.ComponentEvent evt) {//GEN-FIRST:event_textArea2ComponentHidden
-        // TODO add your handling code here:
-    }//GEN-LAST:event_textArea2ComponentHidden
-
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.ButtonGroup buttonGroup1;
@@ -332,6 +545,7 @@ JTextField contactField;
     private javax.swing.JTextField jTextField2;
     private javax.swing.JTextField jTextField3;
     private javax.swing.JTextField jTextField4;
-    private java.awt.TextArea textArea2;
+    private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JTable jTable1;
     // End of variables declaration//GEN-END:variables
 }
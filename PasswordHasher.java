@@ -0,0 +1,191 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Salted PBKDF2 password hashing (JDK only) with constant-time comparison.
+//
+// Stored format: pbkdf2-sha256$<iterations>$<base64 salt>$<base64 hash>, so the cost can be
+// raised later without invalidating existing hashes.
+//
+// Because a proper cost makes every check expensive, verifications run on a dedicated
+// pool of hashing threads (a burst of logins queues up instead of taking every core), and
+// recent successful checks are remembered for a short time. The cache never holds a
+// password: entries are keyed by an HMAC of (username, password, stored hash) under a key
+// that only lives in this process, and changing a password changes the stored hash, which
+// invalidates the entry.
+class PasswordHasher {
+    static final int DEFAULT_ITERATIONS = 210_000;
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static volatile PasswordHasher defaultHasher;
+
+    private final int iterations;
+    private final ExecutorService pool;
+    private final int cacheSize;
+    private final long cacheTtlNanos;
+    private final Map<String, Long> recent;
+    private final SecretKeySpec cacheKey;
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordHasher(int iterations, int threads, int cacheSize, long cacheTtlMillis) {
+        this.iterations = iterations;
+        this.cacheSize = cacheSize;
+        this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheTtlMillis);
+        this.recent = new LinkedHashMap<>(16, 0.75f, true);
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, "HmacSHA256");
+        ThreadFactory daemons = r -> {
+            Thread t = new Thread(r, "password-hasher");
+            t.setDaemon(true);
+            return t;
+        };
+        this.pool = Executors.newFixedThreadPool(threads, daemons);
+    }
+
+    // Shared hasher: default cost, half the cores for hashing, 10k cached checks for a minute
+    public static PasswordHasher getDefault() {
+        PasswordHasher h = defaultHasher;
+        if (h == null) {
+            synchronized (PasswordHasher.class) {
+                if (defaultHasher == null) {
+                    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+                    defaultHasher = new PasswordHasher(DEFAULT_ITERATIONS, threads, 10_000, 60_000);
+                }
+                h = defaultHasher;
+            }
+        }
+        return h;
+    }
+
+    public int getIterations() { return iterations; }
+
+    public String hash(String password) {
+        return hash(password, iterations);
+    }
+
+    // At a given cost, e.g. to match hashes stored under an older one
+    public String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
+
+    // The cost a stored hash was made with, or -1 if it isn't one of ours
+    public static int iterationsOf(String stored) {
+        if (!stored.startsWith(PREFIX + "$")) return -1;
+        int end = stored.indexOf('$', PREFIX.length() + 1);
+        if (end < 0) return -1;
+        try {
+            return Integer.parseInt(stored.substring(PREFIX.length() + 1, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Checks `password` against a stored hash, on the hashing pool unless it was verified recently
+    public boolean verify(String username, String password, String stored) {
+        String key = cacheKey(username, password, stored);
+        if (isCached(key)) return true;
+
+        Future<Boolean> result = pool.submit(() -> verifyNow(password, stored));
+        boolean ok;
+        try {
+            ok = result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+        if (ok) remember(key);
+        return ok;
+    }
+
+    // Checks on the calling thread and bypasses the cache
+    public static boolean verifyNow(String password, String stored) {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(PREFIX)) return false;
+        int cost;
+        try {
+            cost = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        Base64.Decoder b64 = Base64.getDecoder();
+        byte[] expected = b64.decode(parts[3]);
+        return MessageDigest.isEqual(pbkdf2(password, b64.decode(parts[2]), cost), expected);
+    }
+
+    // Constant-time string comparison (for usernames and the like)
+    public static boolean constantTimeEquals(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private String cacheKey(String username, String password, String stored) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(cacheKey);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(password.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return Base64.getEncoder().encodeToString(mac.doFinal(stored.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private boolean isCached(String key) {
+        if (cacheSize <= 0) return false;
+        synchronized (recent) {
+            Long expires = recent.get(key);
+            if (expires == null) return false;
+            if (expires - System.nanoTime() > 0) return true;
+            recent.remove(key);
+            return false;
+        }
+    }
+
+    private void remember(String key) {
+        if (cacheSize <= 0) return;
+        synchronized (recent) {
+            recent.put(key, System.nanoTime() + cacheTtlNanos);
+            if (recent.size() > cacheSize) {
+                Map.Entry<String, Long> eldest = recent.entrySet().iterator().next();
+                recent.remove(eldest.getKey());
+            }
+        }
+    }
+
+    public void forgetAll() {
+        synchronized (recent) { recent.clear(); }
+    }
+
+    public void shutdown() { pool.shutdown(); }
+}
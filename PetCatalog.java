@@ -0,0 +1,95 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// The pets on offer and where their pictures are. Read from a directory: either its
+// pets.txt manifest, one "Name=picture file" per line ('#' starts a comment), or, without
+// one, every picture in it, named after the file (golden_retriever.png is "Golden retriever").
+// Only file names are read here; pictures are decoded when shown (see PetIconCache).
+class PetCatalog {
+    static final String MANIFEST = "pets.txt";
+    static final String[] BUILT_IN = { "Bird", "Cat", "Dog", "Rabbit", "Pig" };
+
+    static final class Pet {
+        final String name;
+        final URL image;
+
+        Pet(String name, URL image) {
+            this.name = name;
+            this.image = image;
+        }
+
+        @Override
+        public String toString() { return name; }
+    }
+
+    private final List<Pet> pets;
+
+    PetCatalog(List<Pet> pets) {
+        this.pets = Collections.unmodifiableList(new ArrayList<>(pets));
+    }
+
+    static PetCatalog load(Path dir) throws IOException {
+        Path manifest = dir.resolve(MANIFEST);
+        List<Pet> pets = new ArrayList<>();
+        if (Files.isRegularFile(manifest)) {
+            try (BufferedReader in = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+                String line;
+                int n = 0;
+                while ((line = in.readLine()) != null) {
+                    n++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    int eq = line.indexOf('=');
+                    if (eq <= 0) throw new IOException(manifest + ":" + n + ": expected Name=file");
+                    pets.add(new Pet(line.substring(0, eq).trim(), dir.resolve(line.substring(eq + 1).trim()).toUri().toURL()));
+                }
+            }
+        } else {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{png,jpg,jpeg,gif,PNG,JPG,JPEG,GIF}")) {
+                for (Path file : files) pets.add(new Pet(displayName(file), file.toUri().toURL()));
+            }
+            pets.sort(Comparator.comparing((Pet p) -> p.name, String.CASE_INSENSITIVE_ORDER));
+        }
+        return new PetCatalog(pets);
+    }
+
+    // The five pets bundled in the 'images' folder on the classpath
+    static PetCatalog builtIn() {
+        List<Pet> pets = new ArrayList<>();
+        for (String pet : BUILT_IN) {
+            URL url = PetCatalog.class.getResource("/images/" + pet.toLowerCase() + ".png");
+            if (url == null) {
+                System.err.println("Error: image for " + pet + " not found. " +
+                                   "Check 'images' folder in classpath.");
+            } else {
+                pets.add(new Pet(pet, url));
+            }
+        }
+        return new PetCatalog(pets);
+    }
+
+    List<Pet> pets() { return pets; }
+
+    int size() { return pets.size(); }
+
+    Pet get(int index) { return pets.get(index); }
+
+    int indexOf(String name) {
+        for (int i = 0; i < pets.size(); i++) if (pets.get(i).name.equalsIgnoreCase(name)) return i;
+        return -1;
+    }
+
+    static String displayName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        name = name.replace('_', ' ').replace('-', ' ').trim();
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -0,0 +1,138 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import javax.swing.*;
+
+// Startup and scrolling cost of the pet list on a large catalog. Runs headless; the list is
+// painted into an offscreen image the way the window would paint it.
+//
+//   java -Djava.awt.headless=true -cp out PetCatalogBenchmark [count] [dir] [rowsPerFrame]
+//       Creates `count` pictures and a pets.txt manifest in `dir` (kept for later runs),
+//       then times loading the catalog from the manifest and from a directory scan, and
+//       building the list up to its first painted frame. It then scrolls through the whole
+//       list, `rowsPerFrame` rows per 16 ms frame. For each frame it reports the paint time
+//       and the share of visible thumbnails already decoded.
+public class PetCatalogBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Path dir = Paths.get(args.length > 1 ? args[1] : "pet-catalog-" + count);
+        int rowsPerFrame = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        createCatalog(dir, count);
+
+        long start = System.nanoTime();
+        PetCatalog catalog = PetCatalog.load(dir);
+        long manifestNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        PetCatalog scanned = PetCatalog.load(dir.resolve("images"));
+        long scanNanos = System.nanoTime() - start;
+        System.out.printf("catalog of %,d: manifest %.1f ms, directory scan (%,d) %.1f ms%n",
+                catalog.size(), manifestNanos / 1e6, scanned.size(), scanNanos / 1e6);
+
+        PetIconCache thumbs = new PetIconCache(PetList.THUMB_SIZE, PetList.THUMB_SIZE, 16L << 20, 2);
+        PetList[] list = new PetList[1];
+        JScrollPane[] pane = new JScrollPane[1];
+        BufferedImage frame = new BufferedImage(260, 400, BufferedImage.TYPE_INT_RGB);
+        start = System.nanoTime();
+        SwingUtilities.invokeAndWait(() -> {
+            list[0] = new PetList(catalog, thumbs);
+            pane[0] = new JScrollPane(list[0]);
+            pane[0].setSize(frame.getWidth(), frame.getHeight());
+            pane[0].addNotify();
+            pane[0].doLayout();
+            pane[0].getViewport().doLayout();
+            paint(pane[0], frame);
+        });
+        System.out.printf("list built and first frame painted: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        while (decodedShare(list[0], thumbs) < 1) Thread.sleep(5);
+        System.out.printf("visible thumbnails decoded after %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        int rowHeight = list[0].getFixedCellHeight();
+        int frames = Math.max(1, (catalog.size() - 8) / rowsPerFrame);
+        long[] paintNanos = new long[frames];
+        double[] decoded = new double[frames];
+        for (int f = 0; f < frames; f++) {
+            int y = (f + 1) * rowsPerFrame * rowHeight;
+            int i = f;
+            SwingUtilities.invokeAndWait(() -> {
+                long t = System.nanoTime();
+                pane[0].getViewport().setViewPosition(new Point(0, y));
+                paint(pane[0], frame);
+                paintNanos[i] = System.nanoTime() - t;
+                decoded[i] = decodedShare(list[0], thumbs);
+            });
+            Thread.sleep(16);
+        }
+        Arrays.sort(paintNanos);
+        double meanDecoded = Arrays.stream(decoded).average().orElse(0);
+        System.out.printf("scroll %,d frames at %d rows/frame: paint p50 %.2f ms, p99 %.2f ms, max %.2f ms; "
+                        + "%.0f%% of visible thumbnails ready; cache %d icons, %,d bytes%n",
+                frames, rowsPerFrame, paintNanos[frames / 2] / 1e6, paintNanos[(int) (frames * 0.99)] / 1e6,
+                paintNanos[frames - 1] / 1e6, meanDecoded * 100, thumbs.size(), thumbs.bytes());
+        thumbs.shutdown();
+    }
+
+    private static void paint(JComponent c, BufferedImage frame) {
+        Graphics2D g = frame.createGraphics();
+        c.paint(g);
+        g.dispose();
+    }
+
+    // Share of the visible rows whose thumbnail is decoded (call on the EDT, or while
+    // the list is idle)
+    private static double decodedShare(PetList list, PetIconCache thumbs) {
+        double[] share = new double[1];
+        Runnable count = () -> {
+            int first = list.getFirstVisibleIndex(), last = list.getLastVisibleIndex();
+            if (first < 0) return;
+            int ready = 0;
+            for (int i = first; i <= last; i++) {
+                URL image = list.getModel().getElementAt(i).image;
+                if (thumbs.get(image, icon -> { }) != thumbs.placeholder()) ready++;
+            }
+            share[0] = (double) ready / (last - first + 1);
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            count.run();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(count);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return share[0];
+    }
+
+    // `count` 400x300 PNGs in dir/images, listed in dir/pets.txt
+    private static void createCatalog(Path dir, int count) throws IOException {
+        Path images = dir.resolve("images");
+        Files.createDirectories(images);
+        try (Writer manifest = Files.newBufferedWriter(dir.resolve(PetCatalog.MANIFEST), StandardCharsets.UTF_8)) {
+            manifest.write("# generated by PetCatalogBenchmark\n");
+            for (int i = 0; i < count; i++) {
+                String file = String.format("pet_%05d.png", i);
+                Path path = images.resolve(file);
+                if (!Files.exists(path)) {
+                    BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+                    Graphics2D g = image.createGraphics();
+                    g.setPaint(new GradientPaint(0, 0, Color.getHSBColor(i * 0.618f % 1, 0.6f, 0.9f),
+                                                 400, 300, Color.getHSBColor(i * 0.31f % 1, 0.8f, 0.5f)));
+                    g.fillRect(0, 0, 400, 300);
+                    g.dispose();
+                    ImageIO.write(image, "png", path.toFile());
+                }
+                manifest.write("Pet " + i + "=images/" + file + "\n");
+            }
+        }
+    }
+}
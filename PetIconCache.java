@@ -0,0 +1,185 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.imageio.ImageIO;
+import javax.swing.*;
+
+// Pet pictures, decoded on background threads the first time they're asked for and scaled
+// once to the size they're shown at. get() never blocks the EDT: a miss returns a
+// placeholder and the icon is handed to the callback when it's ready.
+//
+// Scaled icons are kept least-recently-used first up to `maxBytes` of pixels, and held
+// through soft references so the collector can still take them back under memory pressure.
+// Memory use therefore depends on the budget, not on how many pets the catalog has. Entries
+// the collector cleared come back through a reference queue and are taken off the count.
+//
+// All methods are called on the EDT.
+class PetIconCache {
+    private static final class Entry extends SoftReference<ImageIcon> {
+        final URL image;
+        final long bytes;
+
+        Entry(URL image, ImageIcon icon, long bytes, ReferenceQueue<ImageIcon> cleared) {
+            super(icon, cleared);
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    private final int width, height;
+    private final long maxBytes;
+    private final ExecutorService decoder;
+    private final LinkedHashMap<URL, Entry> icons = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<ImageIcon> cleared = new ReferenceQueue<>();
+    private final Map<URL, java.util.List<Consumer<Icon>>> loading = new HashMap<>();
+    private final Set<URL> failed = new HashSet<>();
+    private volatile Predicate<URL> wanted = url -> true;
+    private final Icon placeholder;
+    private long bytes;
+
+    PetIconCache(int width, int height, long maxBytes, int threads) {
+        this.width = width;
+        this.height = height;
+        this.maxBytes = maxBytes;
+        this.decoder = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "pet-images");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        this.placeholder = new Icon() {
+            @Override
+            public void paintIcon(Component c, Graphics g, int x, int y) {
+                g.setColor(Color.LIGHT_GRAY);
+                g.drawRect(x, y, width - 1, height - 1);
+                if (width >= 100) g.drawString("Loading…", x + width / 2 - 25, y + height / 2);
+            }
+
+            @Override
+            public int getIconWidth() { return width; }
+
+            @Override
+            public int getIconHeight() { return height; }
+        };
+    }
+
+    // The icon for `image` if it's cached, or null if it couldn't be read before; otherwise
+    // the placeholder, and `onLoaded` gets the icon (or null if the image can't be read) once
+    // it's decoded
+    Icon get(URL image, Consumer<Icon> onLoaded) {
+        if (failed.contains(image)) return null;
+        expungeCleared();
+        Entry e = icons.get(image);
+        ImageIcon icon = e == null ? null : e.get();
+        if (icon != null) return icon;
+        if (e != null) remove(image);
+        java.util.List<Consumer<Icon>> waiting = loading.get(image);
+        if (waiting != null) {
+            waiting.add(onLoaded);
+            return placeholder;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(onLoaded);
+        loading.put(image, waiting);
+        decoder.execute(() -> {
+            if (!wanted.test(image)) {
+                SwingUtilities.invokeLater(() -> {
+                    // Asked for again while queued: start over
+                    java.util.List<Consumer<Icon>> callbacks = loading.remove(image);
+                    if (wanted.test(image)) for (Consumer<Icon> c : callbacks) get(image, c);
+                });
+                return;
+            }
+            BufferedImage scaled = decode(image);
+            SwingUtilities.invokeLater(() -> loaded(image, scaled));
+        });
+        return placeholder;
+    }
+
+    // Starts decoding `image` so a later get() is likely a hit
+    void prefetch(URL image) {
+        get(image, ignored -> { });
+    }
+
+    // Decodes still queued for images `filter` rejects are dropped without calling back, so
+    // a fast scroll doesn't leave a backlog of pictures nobody will see; asking again requeues
+    void setWanted(Predicate<URL> filter) {
+        wanted = filter;
+    }
+
+    Icon placeholder() { return placeholder; }
+
+    int size() {
+        expungeCleared();
+        return icons.size();
+    }
+
+    long bytes() {
+        expungeCleared();
+        return bytes;
+    }
+
+    void shutdown() { decoder.shutdownNow(); }
+
+    private void loaded(URL image, BufferedImage scaled) {
+        ImageIcon icon = scaled == null ? null : new ImageIcon(scaled);
+        if (icon == null) {
+            failed.add(image);
+        } else {
+            expungeCleared();
+            remove(image);
+            Entry e = new Entry(image, icon, 4L * scaled.getWidth() * scaled.getHeight(), cleared);
+            icons.put(image, e);
+            bytes += e.bytes;
+            for (Iterator<Map.Entry<URL, Entry>> it = icons.entrySet().iterator(); bytes > maxBytes && it.hasNext(); ) {
+                bytes -= it.next().getValue().bytes;
+                it.remove();
+            }
+        }
+        for (Consumer<Icon> callback : loading.remove(image)) callback.accept(icon);
+    }
+
+    private void remove(URL image) {
+        Entry e = icons.remove(image);
+        if (e != null) bytes -= e.bytes;
+    }
+
+    // Drops entries whose icon the collector took back. An entry already evicted or replaced
+    // was subtracted then, so only the one still mapped counts.
+    private void expungeCleared() {
+        for (Reference<? extends ImageIcon> r; (r = cleared.poll()) != null; ) {
+            Entry e = (Entry) r;
+            if (icons.remove(e.image, e)) bytes -= e.bytes;
+        }
+    }
+
+    // Runs on a decoder thread: reads the image and scales it to fit width x height, keeping
+    // its proportions
+    private BufferedImage decode(URL image) {
+        try {
+            BufferedImage source = ImageIO.read(image);
+            if (source == null) throw new IOException("not an image");
+            double scale = Math.min((double) width / source.getWidth(), (double) height / source.getHeight());
+            int w = Math.max(1, (int) Math.round(source.getWidth() * scale));
+            int h = Math.max(1, (int) Math.round(source.getHeight() * scale));
+            BufferedImage scaled = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, w, h, null);
+            g.dispose();
+            return scaled;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error: could not load " + image + ": " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.awt.*;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+
+// Pet catalog list with a thumbnail per row. Rows have a fixed height, so the JList never
+// measures the whole catalog, and only the rows on screen are rendered; their thumbnails
+// come from `thumbs`, which decodes them in the background and repaints the row when ready.
+// While scrolling, a screenful of rows on either side of the visible ones is prefetched,
+// and decodes queued for rows that have left that window are dropped.
+class PetList extends JList<PetCatalog.Pet> {
+    static final int THUMB_SIZE = 48;
+
+    private final PetIconCache thumbs;
+    private int prefetchedFirst = -1, prefetchedLast = -1;
+    // Added to the enclosing viewport while the list is showing and removed in removeNotify,
+    // so taking the list out and putting it back doesn't stack listeners
+    private final ChangeListener scrolled = e -> prefetch();
+    private JViewport viewport;
+
+    PetList(PetCatalog catalog, PetIconCache thumbs) {
+        super(new AbstractListModel<PetCatalog.Pet>() {
+            @Override
+            public int getSize() { return catalog.size(); }
+
+            @Override
+            public PetCatalog.Pet getElementAt(int index) { return catalog.get(index); }
+        });
+        this.thumbs = thumbs;
+        setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        setFixedCellHeight(THUMB_SIZE + 6);
+        setFixedCellWidth(220);
+        setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean selected, boolean focused) {
+                super.getListCellRendererComponent(list, value, index, selected, focused);
+                URL image = ((PetCatalog.Pet) value).image;
+                setIcon(PetList.this.thumbs.get(image, icon -> repaintRow(index, image)));
+                setIconTextGap(10);
+                return this;
+            }
+        });
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        Container parent = getParent();
+        if (parent instanceof JViewport) {
+            viewport = (JViewport) parent;
+            viewport.addChangeListener(scrolled);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(scrolled);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    private void repaintRow(int index, URL image) {
+        if (index < getModel().getSize() && getModel().getElementAt(index).image == image) {
+            Rectangle r = getCellBounds(index, index);
+            if (r != null) repaint(r);
+        }
+    }
+
+    // Called as the viewport moves: queues the rows around the visible ones and tells the
+    // cache which rows are still worth decoding
+    void prefetch() {
+        int first = getFirstVisibleIndex(), last = getLastVisibleIndex();
+        if (first < 0) return;
+        int span = last - first + 1;
+        int from = Math.max(0, first - span), to = Math.min(getModel().getSize() - 1, last + span);
+        if (from == prefetchedFirst && to == prefetchedLast) return;
+        prefetchedFirst = from;
+        prefetchedLast = to;
+        Set<URL> window = new HashSet<>();
+        for (int i = from; i <= to; i++) window.add(getModel().getElementAt(i).image);
+        thumbs.setWanted(window::contains);
+        // Visible rows are already being loaded by the renderer; nearest neighbours go first
+        for (int d = 1; d <= span; d++) {
+            if (last + d <= to) thumbs.prefetch(getModel().getElementAt(last + d).image);
+            if (first - d >= from) thumbs.prefetch(getModel().getElementAt(first - d).image);
+        }
+    }
+}
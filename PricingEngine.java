@@ -0,0 +1,185 @@
+package carrentalsystem.java;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.ObjDoubleConsumer;
+
+// Loyalty tiers; the discount each one gets is configured in RateTablePricing
+enum CustomerTier { STANDARD, SILVER, GOLD }
+
+// Prices a rental. RentalAgency asks its engine for the cost of every new rental.
+interface PricingEngine {
+    double quote(Car car, CustomerTier tier, LocalDate from, int days);
+
+    // Prices every car matching `query` for the same dates and tier
+    default void quoteFleet(FleetIndex fleet, FleetQuery query, CustomerTier tier, LocalDate from, int days,
+                            ObjDoubleConsumer<Car> sink) {
+        fleet.forEach(query, car -> sink.accept(car, quote(car, tier, from, days)));
+    }
+
+    // The original pricing: Car.calculateRentalCost, whatever the dates or customer
+    PricingEngine FLAT = (car, tier, from, days) -> car.calculateRentalCost(days);
+}
+
+// Seasonal rates, weekend surcharge, long-rental discounts and tier discounts.
+//
+// The car's own daily price (calculateRentalCost(1), so the luxury premium still applies)
+// is multiplied by a factor that only depends on (car class, start date, days, tier).
+// Daily multipliers are precompiled per class into prefix sums over a date window, so the
+// factor for any range inside it is two array reads; factors are also kept in a small
+// lock-free direct-mapped cache. Pricing the whole fleet for one range therefore costs two
+// factor lookups (one per class) plus one multiply per car.
+class RateTablePricing implements PricingEngine {
+    static final int STANDARD = 0;
+    static final int LUXURY = 1;
+
+    // Car classes a season can be limited to
+    enum CarClass { STANDARD, LUXURY }
+
+    // Longest rental that can be priced; the factor cache key holds the length in 24 bits
+    static final int MAX_DAYS = (1 << 24) - 1;
+
+    private static final int CACHE_SIZE = 1 << 12;
+
+    private final List<double[]> seasons = new ArrayList<>(); // {fromDay, toDay (exclusive), multiplier, class or -1}
+    private double weekendSurcharge = 1.0;
+    private final TreeMap<Integer, Double> longRentalDiscounts = new TreeMap<>();
+    private final double[] tierFactors = { 1.0, 1.0, 1.0 };
+
+    private volatile Tables tables;
+    private final Entry[] cache = new Entry[CACHE_SIZE];
+
+    public RateTablePricing() { this(LocalDate.now().minusDays(30), 3 * 365); }
+
+    // Rates are precompiled for [windowStart, windowStart + windowDays); ranges outside the
+    // window are still priced correctly, just without the table
+    public RateTablePricing(LocalDate windowStart, int windowDays) {
+        this.tables = new Tables((int) windowStart.toEpochDay(), windowDays);
+    }
+
+    // Configuration; each call recompiles the tables, so set everything up before use
+
+    public synchronized RateTablePricing season(LocalDate from, LocalDate to, double multiplier) {
+        seasons.add(new double[] { from.toEpochDay(), to.toEpochDay(), multiplier, -1 });
+        return recompile();
+    }
+
+    // A season that only applies to cars of one class
+    public synchronized RateTablePricing season(LocalDate from, LocalDate to, double multiplier, CarClass carClass) {
+        seasons.add(new double[] { from.toEpochDay(), to.toEpochDay(), multiplier, carClass.ordinal() });
+        return recompile();
+    }
+
+    public synchronized RateTablePricing weekendSurcharge(double multiplier) {
+        weekendSurcharge = multiplier;
+        return recompile();
+    }
+
+    // Rentals of at least `minDays` get `discount` (0.1 = 10% off); the largest matching tier wins
+    public synchronized RateTablePricing longRentalDiscount(int minDays, double discount) {
+        longRentalDiscounts.put(minDays, 1.0 - discount);
+        return recompile();
+    }
+
+    public synchronized RateTablePricing tierDiscount(CustomerTier tier, double discount) {
+        tierFactors[tier.ordinal()] = 1.0 - discount;
+        return recompile();
+    }
+
+    private RateTablePricing recompile() {
+        tables = new Tables(tables.firstDay, tables.prefix[0].length - 1);
+        Arrays.fill(cache, null);
+        return this;
+    }
+
+    @Override
+    public double quote(Car car, CustomerTier tier, LocalDate from, int days) {
+        return car.calculateRentalCost(1) * factor(classOf(car), tier, (int) from.toEpochDay(), days);
+    }
+
+    @Override
+    public void quoteFleet(FleetIndex fleet, FleetQuery query, CustomerTier tier, LocalDate from, int days,
+                           ObjDoubleConsumer<Car> sink) {
+        int day = (int) from.toEpochDay();
+        double standard = factor(STANDARD, tier, day, days);
+        double luxury = factor(LUXURY, tier, day, days);
+        fleet.forEach(query, car ->
+                sink.accept(car, car.calculateRentalCost(1) * (car instanceof LuxuryCar ? luxury : standard)));
+    }
+
+    static int classOf(Car car) { return car instanceof LuxuryCar ? LUXURY : STANDARD; }
+
+    // Multiplier applied to the car's daily price for the whole rental
+    double factor(int carClass, CustomerTier tier, int fromDay, int days) {
+        if (days <= 0) return 0;
+        if (days > MAX_DAYS) throw new IllegalArgumentException("Rental too long to price: " + days + " days");
+        long key = ((long) fromDay << 32) | ((long) days << 8) | (tier.ordinal() << 1) | carClass;
+        int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & (CACHE_SIZE - 1);
+        Entry e = cache[slot];
+        if (e != null && e.key == key) return e.factor;
+
+        Tables t = tables;
+        double factor = t.dayUnits(carClass, fromDay, days) * t.lengthFactor(days) * tierFactors[tier.ordinal()];
+        cache[slot] = new Entry(key, factor);
+        return factor;
+    }
+
+    // Immutable so it can be published through the plain cache array
+    private static final class Entry {
+        final long key;
+        final double factor;
+
+        Entry(long key, double factor) {
+            this.key = key;
+            this.factor = factor;
+        }
+    }
+
+    private final class Tables {
+        final int firstDay;
+        final double[][] prefix = new double[2][]; // per class; prefix[c][i] = sum of day multipliers before firstDay + i
+        final double[] lengthFactors;
+
+        Tables(int firstDay, int days) {
+            this.firstDay = firstDay;
+            for (int c = 0; c < 2; c++) {
+                double[] p = new double[days + 1];
+                for (int i = 0; i < days; i++) p[i + 1] = p[i] + dayMultiplier(c, firstDay + i);
+                prefix[c] = p;
+            }
+            int longest = longRentalDiscounts.isEmpty() ? 0 : longRentalDiscounts.lastKey();
+            lengthFactors = new double[longest + 1];
+            for (int d = 0; d <= longest; d++) lengthFactors[d] = lengthFactorSlow(d);
+        }
+
+        // Sum of the day multipliers over [fromDay, fromDay + days)
+        double dayUnits(int carClass, int fromDay, int days) {
+            double[] p = prefix[carClass];
+            int start = fromDay - firstDay;
+            if (start >= 0 && start + days < p.length) return p[start + days] - p[start];
+            double sum = 0;
+            for (int i = 0; i < days; i++) sum += dayMultiplier(carClass, fromDay + i);
+            return sum;
+        }
+
+        double lengthFactor(int days) {
+            return days < lengthFactors.length ? lengthFactors[days]
+                                               : lengthFactors[lengthFactors.length - 1];
+        }
+    }
+
+    private double dayMultiplier(int carClass, int day) {
+        double m = 1.0;
+        for (double[] s : seasons)
+            if (day >= s[0] && day < s[1] && (s[3] < 0 || s[3] == carClass)) m *= s[2];
+        DayOfWeek dow = LocalDate.ofEpochDay(day).getDayOfWeek();
+        if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) m *= weekendSurcharge;
+        return m;
+    }
+
+    private double lengthFactorSlow(int days) {
+        Map.Entry<Integer, Double> e = longRentalDiscounts.floorEntry(days);
+        return e == null ? 1.0 : e.getValue();
+    }
+}
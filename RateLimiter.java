@@ -0,0 +1,124 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+// Lock-free token buckets keyed by a string (a username, a client address, ...).
+//
+// Each bucket is a single AtomicLong holding its "theoretical arrival time" (the GCRA form
+// of a token bucket): every attempt pushes it one interval further, and an attempt is
+// refused while it is more than `capacity` intervals ahead of now. Updates are CAS loops;
+// nothing is ever locked. A bucket whose time has fallen behind now is full, which is the
+// same as no bucket, so sweeps drop those; memory is proportional to the keys seen within
+// one refill period. If a flood of distinct keys still fills `maxKeys`, further new keys
+// share a fixed array of buckets picked by hash: memory stays bounded and collisions only
+// make the limit stricter for those keys.
+class RateLimiter {
+    private static final long DEAD = Long.MIN_VALUE;
+    private static final int OVERFLOW_SLOTS = 1 << 16;
+
+    private final long interval;  // nanoseconds per token
+    private final long burst;     // capacity * interval
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final long start;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLongArray overflow = new AtomicLongArray(OVERFLOW_SLOTS);
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long lastSweep;
+
+    // Allows bursts of `capacity` attempts per key, refilled at `perSecond` attempts per second
+    public RateLimiter(int capacity, double perSecond, int maxKeys) {
+        this(capacity, perSecond, maxKeys, System::nanoTime);
+    }
+
+    RateLimiter(int capacity, double perSecond, int maxKeys, LongSupplier nanoClock) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity: " + capacity);
+        if (perSecond <= 0) throw new IllegalArgumentException("perSecond: " + perSecond);
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+        this.burst = capacity * interval;
+        this.maxKeys = maxKeys;
+        this.clock = nanoClock;
+        this.start = nanoClock.getAsLong();
+    }
+
+    // Takes one token for `key`; false if it has none left
+    public boolean tryAcquire(String key) {
+        long now = now();
+        if (now - lastSweep > burst) sweep(now);
+        while (true) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= maxKeys) {
+                    // Full: sweep early, but at most once a second so a flood can't make every call scan
+                    if (now - lastSweep > Math.min(burst, TimeUnit.SECONDS.toNanos(1))) sweep(now);
+                    if (buckets.size() >= maxKeys) return take(overflow, slot(key), now);
+                }
+                if (buckets.putIfAbsent(key, new AtomicLong(now + interval)) == null) return true;
+                continue;
+            }
+            long tat = bucket.get();
+            if (tat == DEAD) {
+                buckets.remove(key, bucket); // a sweep is removing it; retry with a fresh bucket
+                continue;
+            }
+            long next = Math.max(tat, now) + interval;
+            if (next - now > burst) return false;
+            if (bucket.compareAndSet(tat, next)) return true;
+        }
+    }
+
+    // Milliseconds until `key` has a token again; 0 if it has one now
+    public long millisUntilAvailable(String key) {
+        long now = now();
+        AtomicLong bucket = buckets.get(key);
+        long tat = bucket != null ? bucket.get() : buckets.size() >= maxKeys ? overflow.get(slot(key)) : DEAD;
+        if (tat == DEAD) return 0;
+        long wait = Math.max(tat, now) + interval - now - burst;
+        return wait <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+    }
+
+    // Forgets `key`, giving it a full bucket (e.g. after a successful login)
+    public void reset(String key) {
+        buckets.remove(key);
+    }
+
+    public int size() { return buckets.size(); }
+
+    private boolean take(AtomicLongArray slots, int i, long now) {
+        while (true) {
+            long tat = slots.get(i);
+            long next = Math.max(tat, now) + interval;
+            if (next - now > burst) return false;
+            if (slots.compareAndSet(i, tat, next)) return true;
+        }
+    }
+
+    // Drops buckets that are full by now. One thread sweeps at a time; the others carry on.
+    // A bucket is first CAS-ed to DEAD so no concurrent update is lost with it.
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) return;
+        try {
+            lastSweep = now;
+            for (Map.Entry<String, AtomicLong> e : buckets.entrySet()) {
+                AtomicLong bucket = e.getValue();
+                long tat = bucket.get();
+                if (tat != DEAD && tat <= now && bucket.compareAndSet(tat, DEAD))
+                    buckets.remove(e.getKey(), bucket);
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private long now() { return clock.getAsLong() - start; }
+
+    private static int slot(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (OVERFLOW_SLOTS - 1);
+    }
+}
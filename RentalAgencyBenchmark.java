@@ -0,0 +1,706 @@
+package carrentalsystem.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Targeted experiments for individual RentalAgency changes; RentalAgencySuite is the
+// repeatable per-operation suite with baselines.
+// Run with a big heap for the large history sizes, e.g.
+//   java -Xmx4g -cp out carrentalsystem.java.RentalAgencyBenchmark returns 0,100000,1000000,10000000
+//   java -cp out carrentalsystem.java.RentalAgencyBenchmark stress 1,2,4,8
+//   java -cp out carrentalsystem.java.RentalAgencyBenchmark query 10000,1000000
+//   java -Xmx8g -cp out carrentalsystem.java.RentalAgencyBenchmark reservations 100000 3
+//   java -Xmx4g -cp out carrentalsystem.java.RentalAgencyBenchmark journal 1000000,5000000
+//   java -cp out carrentalsystem.java.RentalAgencyBenchmark crash
+//   java -Xmx8g -cp out carrentalsystem.java.RentalAgencyBenchmark billing 10000000
+//   java -cp out carrentalsystem.java.RentalAgencyBenchmark pricing 1000,10000,100000
+//   java -Xmx16g -cp out carrentalsystem.java.RentalAgencyBenchmark history 1000000 50
+//   java -cp out carrentalsystem.java.RentalAgencyBenchmark shards 1,2,4,8
+//   java -Xmx4g -cp out carrentalsystem.java.RentalAgencyBenchmark export 1000000,10000000
+public class RentalAgencyBenchmark {
+
+    static final int FLEET = 1_000;
+    static final int CUSTOMERS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "returns";
+        switch (mode) {
+            case "returns":
+                long[] sizes = parseSizes(args.length > 1 ? args[1] : "0,100000,1000000,10000000");
+                for (long history : sizes) benchmarkReturns(history);
+                break;
+            case "stress":
+                int[] threads = Arrays.stream(parseSizes(args.length > 1 ? args[1] : "1,2,4,8"))
+                        .mapToInt(n -> (int) n).toArray();
+                for (int n : threads) stress(n, 2_000);
+                break;
+            case "query":
+                for (long fleet : parseSizes(args.length > 1 ? args[1] : "10000,1000000")) benchmarkQueries((int) fleet);
+                break;
+            case "reservations":
+                benchmarkReservations(args.length > 1 ? Integer.parseInt(args[1]) : 100_000,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 1);
+                break;
+            case "journal":
+                for (long events : parseSizes(args.length > 1 ? args[1] : "1000000,5000000")) benchmarkStartup(events);
+                break;
+            case "crash":
+                crashRecovery();
+                break;
+            case "journal-writer": // child process for "crash"
+                writeUntilKilled(Paths.get(args[1]));
+                break;
+            case "billing":
+                for (long rows : parseSizes(args.length > 1 ? args[1] : "10000000")) benchmarkBilling((int) rows);
+                break;
+            case "pricing":
+                for (long fleet : parseSizes(args.length > 1 ? args[1] : "1000,10000,100000")) benchmarkPricing((int) fleet);
+                break;
+            case "shards":
+                for (long n : parseSizes(args.length > 1 ? args[1] : "1,2,4,8")) benchmarkShards((int) n, 2_000);
+                break;
+            case "shard-worker": // child process for "shards"
+                shardWorker(Integer.parseInt(args[1]), Long.parseLong(args[2]));
+                break;
+            case "export":
+                for (long n : parseSizes(args.length > 1 ? args[1] : "1000000,10000000")) benchmarkExport((int) n);
+                break;
+            case "history":
+                benchmarkHistoryFootprint(args.length > 1 ? Integer.parseInt(args[1]) : 100_000,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 50);
+                break;
+            default:
+                System.err.println("Unknown mode: " + mode);
+        }
+    }
+
+    // Builds an agency with `history` closed rentals, then times returnCar on fresh rentals.
+    // With the active-rental index the per-return cost should stay flat as history grows.
+    static void benchmarkReturns(long history) {
+        RentalAgency agency = newAgency(FLEET, CUSTOMERS);
+        for (long i = 0; i < history; i++) {
+            String regNo = regNo((int) (i % FLEET));
+            agency.rentCar(regNo, customerId((int) (i % CUSTOMERS)), 1);
+            agency.returnCar(regNo);
+        }
+
+        int rounds = 200_000;
+        long elapsed = 0;
+        for (int i = 0; i < rounds; i++) {
+            String regNo = regNo(i % FLEET);
+            agency.rentCar(regNo, customerId(i % CUSTOMERS), 1);
+            long start = System.nanoTime();
+            agency.returnCar(regNo);
+            elapsed += System.nanoTime() - start;
+        }
+        System.out.printf("returnCar  history=%,d  %.1f ns/op%n", history, (double) elapsed / rounds);
+    }
+
+    // Hammers a small fleet from `threads` threads and checks that no car is ever held by
+    // two renters at once and that the indexes agree with the transaction log afterwards.
+    static void stress(int threads, long millis) {
+        int fleet = 64;
+        RentalAgency agency = newAgency(fleet, CUSTOMERS);
+        AtomicIntegerArray holders = new AtomicIntegerArray(fleet);
+        LongAdder rents = new LongAdder();
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long done = 0;
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    int car = rnd.nextInt(fleet);
+                    if (agency.rentCar(regNo(car), customerId(rnd.nextInt(CUSTOMERS)), 1) != null) {
+                        if (holders.incrementAndGet(car) != 1)
+                            throw new IllegalStateException("Car " + regNo(car) + " rented twice");
+                        rents.increment();
+                        holders.decrementAndGet(car);
+                        agency.returnCar(regNo(car));
+                    }
+                    done++;
+                }
+                ops.add(done);
+            });
+            workers[w].start();
+        }
+        for (Thread t : workers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if (agency.getTransactions().size() != rents.sum())
+            throw new IllegalStateException("Transaction log lost appends");
+        for (RentalTransaction t : agency.getTransactions())
+            if (t.isActive()) throw new IllegalStateException("Rental left open: " + t);
+        if (agency.getAvailableCars().size() != fleet)
+            throw new IllegalStateException("Cars left unavailable");
+
+        System.out.printf("stress  threads=%d  %,.0f ops/s  %,d rentals%n",
+                threads, ops.sum() * 1000.0 / millis, rents.sum());
+    }
+
+    // Per shard count: a ShardedRentalAgency with one thread per branch doing rent/return on
+    // random cars, 1% of them transfers and 1% one-way rentals to random branches, then checks
+    // every car is in exactly one branch and nothing is left out. Then plain rent/return with
+    // all branches in one JVM against one JVM per branch, to see whether throughput grows and
+    // heap per process shrinks with the shard count. Processes only scale with free cores.
+    static void benchmarkShards(int shards, long millis) throws Exception {
+        int carsPerBranch = FLEET;
+        String[] names = new String[shards];
+        for (int b = 0; b < shards; b++) names[b] = "B" + b;
+        ShardedRentalAgency agency = new ShardedRentalAgency(names);
+        for (int i = 0; i < shards * carsPerBranch; i++) {
+            agency.addCar(names[i / carsPerBranch], new Car(regNo(i), "Model " + (i % 20), 30 + i % 50) {});
+        }
+        for (int i = 0; i < CUSTOMERS; i++) agency.addCustomer(new Customer(customerId(i), "Customer " + i, "c" + i));
+
+        int fleet = shards * carsPerBranch;
+        LongAdder ops = new LongAdder(), rents = new LongAdder(), transfers = new LongAdder(), oneWay = new LongAdder();
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        Thread[] workers = new Thread[shards];
+        for (int w = 0; w < shards; w++) {
+            workers[w] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long done = 0;
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    String car = regNo(rnd.nextInt(fleet));
+                    int dice = rnd.nextInt(100);
+                    if (dice == 0) {
+                        if (agency.transferCar(car, names[rnd.nextInt(shards)])) transfers.increment();
+                    } else if (dice == 1) {
+                        if (agency.rentCarOneWay(car, customerId(rnd.nextInt(CUSTOMERS)), 1, names[rnd.nextInt(shards)]) != null) {
+                            oneWay.increment();
+                            rents.increment();
+                            agency.returnCar(car);
+                        }
+                    } else if (agency.rentCar(car, customerId(rnd.nextInt(CUSTOMERS)), 1) != null) {
+                        rents.increment();
+                        agency.returnCar(car);
+                    }
+                    done++;
+                }
+                ops.add(done);
+            });
+            workers[w].start();
+        }
+        for (Thread t : workers) t.join();
+
+        long rentals = 0;
+        for (int i = 0; i < fleet; i++) {
+            int holders = 0;
+            for (String name : names) if (agency.getBranch(name).findCar(regNo(i)) != null) holders++;
+            if (holders != 1 || !agency.getBranch(agency.findBranch(regNo(i))).findCar(regNo(i)).isAvailable())
+                throw new IllegalStateException(regNo(i) + " is in " + holders + " branches or left rented");
+        }
+        for (String name : names) rentals += agency.getBranch(name).getTransactions().size();
+        if (rentals != rents.sum() || agency.countAvailableCars() != fleet)
+            throw new IllegalStateException("Rentals or fleet counts out of sync across branches");
+
+        // The same branches, cars and threads twice more, all through ShardedRentalAgency doing
+        // rent/return: every branch in one child JVM, then one child JVM per branch
+        long[] together = shardProcesses(1, shards, millis);
+        long[] apart = shardProcesses(shards, 1, millis);
+
+        System.out.printf("shards=%d  mixed %,.0f ops/s (%,d rentals, %,d transfers, %,d one-way) - consistent;"
+                        + "  1 process %,d ops/s, %,d MB heap;  %d processes %,d ops/s, at most %,d MB heap each%n",
+                shards, ops.sum() * 1000.0 / millis, rents.sum(), transfers.sum(), oneWay.sum(),
+                together[0], together[1] >> 20, shards, apart[0], apart[1] >> 20);
+    }
+
+    // Starts `processes` shard-worker JVMs with `branches` branches each; returns their total
+    // ops/s and the largest heap any of them used
+    static long[] shardProcesses(int processes, int branches, long millis) throws Exception {
+        Process[] children = new Process[processes];
+        for (int p = 0; p < processes; p++) {
+            children[p] = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    RentalAgencyBenchmark.class.getName(), "shard-worker", Integer.toString(branches), Long.toString(millis))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        }
+        long[] result = new long[2];
+        for (Process child : children) {
+            try (java.io.BufferedReader out = new java.io.BufferedReader(new java.io.InputStreamReader(child.getInputStream()))) {
+                String[] line = out.readLine().trim().split(" ");
+                result[0] += Long.parseLong(line[0]);
+                result[1] = Math.max(result[1], Long.parseLong(line[1]));
+            }
+            if (child.waitFor() != 0) throw new IllegalStateException("shard worker failed");
+        }
+        return result;
+    }
+
+    // Child for "shards": a ShardedRentalAgency of `branches` branches with FLEET cars each and
+    // one thread per branch doing rent/return on random cars through it; prints its ops/s and
+    // the heap in use at the end
+    static void shardWorker(int branches, long millis) throws InterruptedException {
+        String[] names = new String[branches];
+        for (int b = 0; b < branches; b++) names[b] = "B" + b;
+        ShardedRentalAgency agency = new ShardedRentalAgency(names);
+        for (int i = 0; i < branches * FLEET; i++) {
+            agency.addCar(names[i / FLEET], new Car(regNo(i), "Model " + (i % 20), 30 + i % 50) {});
+        }
+        for (int i = 0; i < CUSTOMERS; i++) agency.addCustomer(new Customer(customerId(i), "Customer " + i, "c" + i));
+        double rate = rentReturnRate(branches, millis, branches * FLEET, (car, customer) ->
+                agency.rentCar(car, customer, 1) != null && agency.returnCar(car));
+        System.out.println((long) rate + " " + usedHeap());
+    }
+
+    interface RentReturn { boolean run(String car, String customer); }
+
+    // Rent/return cycles per second over `threads` threads, after a second of warm-up
+    static double rentReturnRate(int threads, long millis, int fleet, RentReturn cycle) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        long warm = System.nanoTime() + 1_000_000_000L, deadline = warm + millis * 1_000_000L;
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long done = 0;
+                for (long now = System.nanoTime(); now < deadline; now = System.nanoTime()) {
+                    for (int i = 0; i < 1024; i++) cycle.run(regNo(rnd.nextInt(fleet)), customerId(rnd.nextInt(CUSTOMERS)));
+                    if (now >= warm) done += 1024;
+                }
+                ops.add(done);
+            });
+            workers[w].start();
+        }
+        for (Thread t : workers) t.join();
+        return ops.sum() * 1000.0 / millis;
+    }
+
+    // Nightly dump of `rows` rentals (the last FLEET/10 still open): the toString() text dump
+    // against a columnar export, then an incremental export after the open rentals come back
+    // and 1% more are made. The mapped archive is checked row by row against the log and its
+    // revenue totals against the BillingReport.
+    static void benchmarkExport(int rows) throws IOException {
+        RentalAgency agency = newAgency(FLEET, CUSTOMERS);
+        int open = FLEET / 10;
+        for (int i = 0; i < rows; i++) {
+            agency.rentCar(regNo(i % FLEET), customerId(i % CUSTOMERS), 1 + i % 7);
+            if (i < rows - open) agency.returnCar(regNo(i % FLEET));
+        }
+        Path text = Files.createTempFile("rentals", ".txt");
+        Path archive = Files.createTempFile("rentals", ".rtx");
+        try {
+            long t0 = System.nanoTime();
+            try (java.io.BufferedWriter out = Files.newBufferedWriter(text)) {
+                for (RentalTransaction t : agency.getTransactions()) {
+                    out.write(t.toString());
+                    out.newLine();
+                }
+            }
+            long t1 = System.nanoTime();
+            TransactionExporter exporter = new TransactionExporter(archive);
+            if (exporter.export(agency.getTransactionLog()) != rows) throw new IllegalStateException("Export is short");
+            long t2 = System.nanoTime();
+            long full = Files.size(archive);
+
+            for (int i = rows - open; i < rows; i++) agency.returnCar(regNo(i % FLEET));
+            for (int i = 0; i < rows / 100; i++) {
+                agency.rentCar(regNo(i % FLEET), customerId(i % CUSTOMERS), 1 + i % 7);
+                agency.returnCar(regNo(i % FLEET));
+            }
+            long t3 = System.nanoTime();
+            long added = exporter.export(agency.getTransactionLog());
+            long t4 = System.nanoTime();
+            if (added != rows / 100 || exporter.export(agency.getTransactionLog()) != 0)
+                throw new IllegalStateException("Incremental export wrote " + added + " rows");
+
+            // A torn segment at the end is dropped by the next export
+            long size = Files.size(archive);
+            Files.write(archive, new byte[100], StandardOpenOption.APPEND);
+            if (exporter.export(agency.getTransactionLog()) != 0 || Files.size(archive) != size)
+                throw new IllegalStateException("Torn tail was not cut off");
+
+            long t5 = System.nanoTime();
+            TransactionArchive a = TransactionArchive.open(archive);
+            long t6 = System.nanoTime();
+            long cents = a.totalCents();
+            long t7 = System.nanoTime();
+            TransactionLog log = agency.getTransactionLog();
+            if (a.size() != log.size() || a.openRentals() != 0) throw new IllegalStateException("Archive size differs");
+            for (int r = 0; r < log.size(); r++) {
+                if (a.rentalDay(r) != log.rentalDay(r) || a.returnDay(r) != log.returnDay(r)
+                        || a.days(r) != log.days(r) || a.cents(r) != log.cents(r)
+                        || !a.regNo(a.carId(r)).equals(log.car(r).getRegistrationNumber())
+                        || a.isLuxury(a.carId(r)) != log.car(r) instanceof LuxuryCar
+                        || !a.customerId(a.customerIndex(r)).equals(log.customer(r).getCustomerId()))
+                    throw new IllegalStateException("Archive row " + r + " differs from the log");
+            }
+            BillingReport billing = agency.getBillingReport();
+            if (cents != billing.getTotalCents() || !a.getRevenuePerDay().equals(billing.getRevenuePerDay())
+                    || !a.getRevenuePerModel().equals(new TreeMap<>(billing.getRevenuePerModel())))
+                throw new IllegalStateException("Archive revenue differs from the billing report");
+
+            System.out.printf("export %,d rows  text %,d ms %,d MB  columnar %,d ms %,d MB (%.0fx faster, %.1fx smaller)"
+                            + "  +%,d rows incremental %,d ms (+%,d KB)  mapped open %,d ms, revenue scan %,d ms%n",
+                    rows, (t1 - t0) / 1_000_000, Files.size(text) >> 20, (t2 - t1) / 1_000_000, full >> 20,
+                    (double) (t1 - t0) / (t2 - t1), (double) Files.size(text) / full,
+                    added, (t4 - t3) / 1_000_000, (size - full) >> 10, (t6 - t5) / 1_000_000, (t7 - t6) / 1_000_000);
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    // Half the fleet rented; compares the old full scan with bitmap queries
+    static void benchmarkQueries(int fleetSize) {
+        RentalAgency agency = newAgency(fleetSize, CUSTOMERS);
+        for (int i = 0; i < fleetSize; i += 2) agency.rentCar(regNo(i), customerId(i % CUSTOMERS), 1);
+        FleetIndex fleet = agency.getFleet();
+        List<Car> all = agency.findCars(FleetQuery.all());
+        FleetQuery luxuryUnder120 = FleetQuery.available().luxury(true).maxPricePerDay(120);
+        Car[] page = new Car[50];
+        int rounds = Math.max(10, 20_000_000 / fleetSize);
+        long sink = 0;
+
+        for (int pass = 0; pass < 2; pass++) { // first pass is warm-up
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) { // what getAvailableCars used to do
+                List<Car> available = new ArrayList<>();
+                for (Car car : all) if (car.isAvailable()) available.add(car);
+                sink += available.size();
+            }
+            long scan = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) sink += agency.getAvailableCars().size();
+            long list = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) sink += fleet.count(luxuryUnder120);
+            long count = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) sink += fleet.page(luxuryUnder120, fleetSize / 2, page);
+            long paged = System.nanoTime() - start;
+
+            if (pass == 1)
+                System.out.printf("query  fleet=%,d  scan %.1f us  getAvailableCars %.1f us  "
+                                + "count(luxury<=120) %.1f us  page(50) %.2f us  [%d]%n",
+                        fleetSize, scan / 1e3 / rounds, list / 1e3 / rounds,
+                        count / 1e3 / rounds, paged / 1e3 / rounds, sink & 1);
+        }
+    }
+
+    // Fills `years` of back-to-back bookings (1-7 days, with gaps) on every car, then times
+    // single-car availability checks and whole-fleet "free for this range" searches.
+    static void benchmarkReservations(int fleetSize, int years) {
+        RentalAgency agency = newAgency(fleetSize, CUSTOMERS);
+        LocalDate start = LocalDate.now().plusDays(30);
+        int horizon = years * 365;
+        Random rnd = new Random(42);
+        long bookings = 0;
+        long buildStart = System.nanoTime();
+        for (int c = 0; c < fleetSize; c++) {
+            int day = rnd.nextInt(3);
+            while (day < horizon) {
+                int length = 1 + rnd.nextInt(7);
+                if (agency.reserveCar(regNo(c), customerId(rnd.nextInt(CUSTOMERS)),
+                        start.plusDays(day), start.plusDays(day + length)) != null) bookings++;
+                day += length + rnd.nextInt(4);
+            }
+        }
+        System.out.printf("reservations  cars=%,d  bookings=%,d  built in %d ms%n",
+                fleetSize, bookings, (System.nanoTime() - buildStart) / 1_000_000);
+
+        int probes = 1_000_000;
+        long free = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < probes; i++) {
+            LocalDate from = start.plusDays(rnd.nextInt(horizon));
+            if (agency.isCarFree(regNo(rnd.nextInt(fleetSize)), from, from.plusDays(1 + rnd.nextInt(3)))) free++;
+        }
+        long single = System.nanoTime() - t0;
+
+        int searches = 20;
+        long found = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < searches; i++) {
+            LocalDate from = start.plusDays(rnd.nextInt(horizon));
+            found += agency.findCarsFreeFor(from, from.plusDays(2), FleetQuery.all()).size();
+        }
+        long fleetWide = System.nanoTime() - t0;
+
+        System.out.printf("reservations  isCarFree %.0f ns/op (%d%% free)  findCarsFreeFor %.1f ms/op (avg %,d cars)%n",
+                (double) single / probes, free * 100 / probes,
+                fleetWide / 1e6 / searches, found / searches);
+    }
+
+    // Times flattening the history into columns, then the revenue pass on one thread and on
+    // the common fork-join pool
+    static void benchmarkBilling(int rows) {
+        RentalAgency agency = newAgency(FLEET, 100_000);
+        for (int i = 0; i < rows; i++) {
+            String regNo = regNo(i % FLEET);
+            agency.rentCar(regNo, customerId(i % 100_000), 1 + i % 7);
+            agency.returnCar(regNo);
+        }
+        ForkJoinPool oneThread = new ForkJoinPool(1);
+        for (int pass = 0; pass < 3; pass++) { // first passes are warm-up
+            long start = System.nanoTime();
+            BillingReport.Columns columns = BillingReport.Columns.of(agency.getTransactionLog());
+            long extract = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long single = BillingReport.compute(columns, oneThread).getTotalCents();
+            long sequential = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long total = BillingReport.compute(columns, ForkJoinPool.commonPool()).getTotalCents();
+            long parallel = System.nanoTime() - start;
+            if (total != single) throw new IllegalStateException("Parallel and sequential totals differ");
+
+            if (pass == 2)
+                System.out.printf("billing  rows=%,d  columns %d ms  sum 1 thread %d ms  sum %d threads %d ms%n",
+                        rows, extract / 1_000_000, sequential / 1_000_000,
+                        ForkJoinPool.commonPool().getParallelism(), parallel / 1_000_000);
+        }
+        oneThread.shutdown();
+    }
+
+    // Prices the whole available fleet for random ranges, as the quote screen does
+    static void benchmarkPricing(int fleetSize) {
+        RentalAgency agency = newAgency(fleetSize, CUSTOMERS);
+        LocalDate today = LocalDate.now();
+        agency.setPricingEngine(new RateTablePricing()
+                .season(today.withDayOfMonth(1).plusMonths(1), today.withDayOfMonth(1).plusMonths(3), 1.3)
+                .weekendSurcharge(1.2)
+                .longRentalDiscount(7, 0.1)
+                .longRentalDiscount(28, 0.25)
+                .tierDiscount(CustomerTier.GOLD, 0.05));
+        Random rnd = new Random(7);
+        double[] total = {0};
+        int rounds = Math.max(100, 10_000_000 / fleetSize);
+        for (int pass = 0; pass < 2; pass++) { // first pass is warm-up
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++)
+                agency.quoteFleet(FleetQuery.available(), CustomerTier.values()[r % 3],
+                        today.plusDays(rnd.nextInt(365)), 1 + rnd.nextInt(30), (car, price) -> total[0] += price);
+            long elapsed = System.nanoTime() - start;
+            if (pass == 1)
+                System.out.printf("pricing  fleet=%,d  whole-fleet quote %.1f us  (%.1f ns/car)%n",
+                        fleetSize, elapsed / 1e3 / rounds, (double) elapsed / rounds / fleetSize);
+        }
+    }
+
+    // Heap used by `customers` x `rentals` of history: the columnar log versus the previous
+    // layout (a RentalTransaction object with boxed dates per rental, an ArrayList per customer
+    // and one global ArrayList), rebuilt here with the same shape
+    static void benchmarkHistoryFootprint(int customers, int rentals) {
+        long rows = (long) customers * rentals;
+        long base = usedHeap();
+        RentalAgency agency = newAgency(FLEET, customers);
+        long withCustomers = usedHeap();
+        for (int r = 0; r < rentals; r++) {
+            for (int c = 0; c < customers; c++) {
+                String regNo = regNo(c % FLEET);
+                agency.rentCar(regNo, customerId(c), 1 + r % 7);
+                agency.returnCar(regNo);
+            }
+        }
+        long columnar = usedHeap() - withCustomers;
+        int sampled = 0;
+        for (RentalTransaction t : agency.findCustomer(customerId(0)).getRentalHistory()) sampled += t.getRentalDays();
+        if (agency.findCustomer(customerId(customers - 1)).getRentalHistory().size() != rentals || sampled == 0)
+            throw new IllegalStateException("History view is incomplete");
+        Car[] cars = agency.findCars(FleetQuery.all()).toArray(new Car[0]);
+        Customer[] people = new Customer[customers];
+        for (int c = 0; c < customers; c++) people[c] = agency.findCustomer(customerId(c));
+        agency = null;
+        long afterDrop = usedHeap();
+
+        List<LegacyTransaction> all = new ArrayList<>();
+        List<List<LegacyTransaction>> perCustomer = new ArrayList<>(customers);
+        for (int c = 0; c < customers; c++) perCustomer.add(new ArrayList<>());
+        LocalDate day = LocalDate.now();
+        for (int r = 0; r < rentals; r++) {
+            for (int c = 0; c < customers; c++) {
+                LegacyTransaction t = new LegacyTransaction(cars[c % FLEET], people[c],
+                        LocalDate.ofEpochDay(day.toEpochDay() + r), LocalDate.ofEpochDay(day.toEpochDay() + r + 1),
+                        40.0 * (1 + r % 7));
+                all.add(t);
+                perCustomer.get(c).add(t);
+            }
+        }
+        long legacy = usedHeap() - afterDrop;
+        // Read both lists after the measurement so they stay live through it
+        long checksum = 0;
+        for (LegacyTransaction t : all) checksum += Math.round(t.totalCost);
+        for (List<LegacyTransaction> history : perCustomer) checksum += history.size();
+
+        System.out.printf("history  %,d customers x %d rentals = %,d rows  columnar %,d MB (%.1f B/row)  "
+                        + "object layout %,d MB (%.1f B/row)  [customers+fleet %,d MB]  checksum %d%n",
+                customers, rentals, rows, columnar >> 20, (double) columnar / rows,
+                legacy >> 20, (double) legacy / rows, (withCustomers - base) >> 20, checksum);
+    }
+
+    static final class LegacyTransaction {
+        final Car car;
+        final Customer customer;
+        final LocalDate rentalDate;
+        LocalDate returnDate;
+        boolean active;
+        final double totalCost;
+
+        LegacyTransaction(Car car, Customer customer, LocalDate rentalDate, LocalDate returnDate, double totalCost) {
+            this.car = car;
+            this.customer = customer;
+            this.rentalDate = rentalDate;
+            this.returnDate = returnDate;
+            this.totalCost = totalCost;
+        }
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Writes `events` journal events, then times startup from the log alone and from a snapshot
+    static void benchmarkStartup(long events) throws IOException {
+        Path dir = Files.createTempDirectory("agency-journal");
+        try {
+            RentalAgency agency = RentalAgency.open(dir);
+            populate(agency, FLEET, CUSTOMERS);
+            long start = System.nanoTime();
+            for (long i = 0; i < events / 2; i++) {
+                String regNo = regNo((int) (i % FLEET));
+                agency.rentCar(regNo, customerId((int) (i % CUSTOMERS)), 1);
+                agency.returnCar(regNo);
+            }
+            long written = System.nanoTime() - start;
+            agency.close();
+
+            start = System.nanoTime();
+            agency = RentalAgency.open(dir);
+            long fromLog = System.nanoTime() - start;
+            agency.snapshot();
+            agency.close();
+
+            start = System.nanoTime();
+            agency = RentalAgency.open(dir);
+            long fromSnapshot = System.nanoTime() - start;
+            int transactions = agency.getTransactions().size();
+            agency.close();
+
+            System.out.printf("journal  events=%,d  write %,.0f events/s  startup from log %d ms  "
+                            + "from snapshot %d ms  (%,d transactions, %,d bytes on disk)%n",
+                    events, events / (written / 1e9), fromLog / 1_000_000, fromSnapshot / 1_000_000,
+                    transactions, directorySize(dir));
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    // Kills a writer process mid-stream, tears the last record on top of that, then checks
+    // that recovery drops the torn tail and comes back with consistent indexes.
+    static void crashRecovery() throws Exception {
+        Path dir = Files.createTempDirectory("agency-crash");
+        try {
+            Process child = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    RentalAgencyBenchmark.class.getName(), "journal-writer", dir.toString())
+                    .inheritIO().start();
+            Thread.sleep(3_000);
+            child.destroyForcibly().waitFor();
+
+            Path log;
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                log = files.filter(p -> p.getFileName().toString().startsWith("events-"))
+                        .max(Comparator.naturalOrder()).orElseThrow();
+            }
+            try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ch.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, AgencyJournal.RENT, 0, 5}));
+            }
+
+            long start = System.nanoTime();
+            RentalAgency agency = RentalAgency.open(dir);
+            long recovery = System.nanoTime() - start;
+            int active = 0;
+            for (int i = 0; i < FLEET; i++) {
+                Car car = agency.findCar(regNo(i));
+                RentalTransaction t = agency.findActiveRental(regNo(i));
+                if (car.isAvailable() == (t != null))
+                    throw new IllegalStateException("Availability and active index disagree for " + car);
+                if (t != null) active++;
+            }
+            for (RentalTransaction t : agency.getTransactions())
+                if (t.isActive() && !t.equals(agency.findActiveRental(t.getCar().getRegistrationNumber())))
+                    throw new IllegalStateException("Active rental missing from index: " + t);
+            if (agency.getAvailableCars().size() != FLEET - active)
+                throw new IllegalStateException("Fleet index out of sync");
+            System.out.printf("crash  recovered %,d transactions (%d active) in %d ms - consistent%n",
+                    agency.getTransactions().size(), active, recovery / 1_000_000);
+            agency.close();
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    static void writeUntilKilled(Path dir) throws IOException {
+        RentalAgency agency = RentalAgency.open(new AgencyJournal(dir, 1, false, 200_000));
+        populate(agency, FLEET, CUSTOMERS);
+        Random rnd = new Random();
+        while (true) {
+            int car = rnd.nextInt(FLEET);
+            if (agency.rentCar(regNo(car), customerId(rnd.nextInt(CUSTOMERS)), 1 + rnd.nextInt(5)) == null)
+                agency.returnCar(regNo(car));
+        }
+    }
+
+    static long directorySize(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            long size = 0;
+            for (Path p : (Iterable<Path>) files::iterator) size += Files.size(p);
+            return size;
+        }
+    }
+
+    static void deleteDirectory(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    static RentalAgency newAgency(int fleet, int customers) {
+        return populate(new RentalAgency(), fleet, customers);
+    }
+
+    static RentalAgency populate(RentalAgency agency, int fleet, int customers) {
+        for (int i = 0; i < fleet; i++) {
+            if (i % 10 == 0) agency.addCar(new LuxuryCar(regNo(i), "Model " + (i % 20), 100 + i % 50));
+            else agency.addCar(new Car(regNo(i), "Model " + (i % 20), 30 + i % 50) {});
+        }
+        for (int i = 0; i < customers; i++)
+            agency.addCustomer(new Customer(customerId(i), "Customer " + i, "c" + i + "@email.com"));
+        return agency;
+    }
+
+    static String regNo(int i) { return "REG" + i; }
+    static String customerId(int i) { return "C" + i; }
+
+    static long[] parseSizes(String csv) {
+        String[] parts = csv.split(",");
+        long[] sizes = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) sizes[i] = Long.parseLong(parts[i].trim());
+        return sizes;
+    }
+}
@@ -0,0 +1,253 @@
+package carrentalsystem.java;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+// Repeatable benchmark suite for the RentalAgency hot paths (rentCar, returnCar,
+// getAvailableCars, findCustomer, rental history) at parameterised fleet/history sizes and
+// thread counts. Works like a small JMH: warm-up and measurement iterations of fixed
+// duration, per-op time, and per-op allocation from the thread allocation counters (the
+// equivalent of -prof gc). The same benchmarks run under JMH itself from the jmh module
+// (gradle :jmh:jmh); this one needs nothing but the JDK. Results can be saved and compared
+// against a baseline run:
+//
+//   java -Xmx4g -cp out carrentalsystem.java.RentalAgencySuite --save baseline.csv
+//   ... change RentalAgency ...
+//   java -Xmx4g -cp out carrentalsystem.java.RentalAgencySuite --baseline baseline.csv
+//
+// Options: --fleet 1000,100000  --history 0,1000000  --threads 1,4  --customers 10000
+//          --warmup 3 --iterations 5 --millis 500  --only rentCar,returnCar
+public class RentalAgencySuite {
+
+    // One benchmark. Each worker thread owns a disjoint slice of the fleet/customers; only
+    // run() is timed and it reports how many operations it performed.
+    interface Workload {
+        default void setup(int thread) { }
+        int run(int thread);
+        default void teardown(int thread) { }
+        // Whether it adds rentals; the agency is then rebuilt before every iteration so the
+        // history stays the size the row claims
+        default boolean mutates() { return false; }
+    }
+
+    // The agency under test with `history` closed rentals spread over the customers
+    static final class Fixture {
+        final Params p;
+        RentalAgency agency;
+        private boolean dirty = true;
+
+        Fixture(Params p) {
+            this.p = p;
+            reset();
+        }
+
+        // Before an iteration of a mutating workload
+        void beforeChurn() {
+            reset();
+            dirty = true;
+        }
+
+        // Rebuilds the agency if a mutating workload has run on it since it was built
+        void reset() {
+            if (!dirty) return;
+            dirty = false;
+            agency = null;
+            RentalAgency a = RentalAgencyBenchmark.newAgency(p.fleet, p.customers);
+            for (long i = 0; i < p.history; i++) {
+                String regNo = RentalAgencyBenchmark.regNo((int) (i % p.fleet));
+                a.rentCar(regNo, RentalAgencyBenchmark.customerId((int) (i % p.customers)), 1);
+                a.returnCar(regNo);
+            }
+            agency = a;
+        }
+    }
+
+    static final class Params {
+        int fleet;
+        int customers;
+        long history;
+        int threads;
+
+        String key() { return fleet + "/" + history + "/" + threads; }
+    }
+
+    static int warmup = 3;
+    static int iterations = 5;
+    static long iterationMillis = 500;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) opts.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        long[] fleets = RentalAgencyBenchmark.parseSizes(opts.getOrDefault("fleet", "1000,100000"));
+        long[] histories = RentalAgencyBenchmark.parseSizes(opts.getOrDefault("history", "0,1000000"));
+        long[] threadCounts = RentalAgencyBenchmark.parseSizes(opts.getOrDefault("threads", "1,4"));
+        int customers = Integer.parseInt(opts.getOrDefault("customers", "10000"));
+        warmup = Integer.parseInt(opts.getOrDefault("warmup", "3"));
+        iterations = Integer.parseInt(opts.getOrDefault("iterations", "5"));
+        iterationMillis = Long.parseLong(opts.getOrDefault("millis", "500"));
+        Set<String> only = opts.containsKey("only")
+                ? new HashSet<>(Arrays.asList(opts.get("only").split(","))) : null;
+        Map<String, double[]> baseline = opts.containsKey("baseline")
+                ? load(Paths.get(opts.get("baseline"))) : Collections.emptyMap();
+
+        List<String> rows = new ArrayList<>();
+        System.out.printf("%-18s %9s %10s %7s %12s %10s %s%n",
+                "Benchmark", "fleet", "history", "threads", "ns/op", "B/op", baseline.isEmpty() ? "" : "vs baseline");
+        for (long fleet : fleets) {
+            for (long history : histories) {
+                Params p = new Params();
+                p.fleet = (int) fleet;
+                p.customers = customers;
+                p.history = history;
+                Fixture fixture = new Fixture(p);
+                for (long threads : threadCounts) {
+                    p.threads = (int) threads;
+                    for (Map.Entry<String, Workload> b : workloads(fixture, p).entrySet()) {
+                        if (only != null && !only.contains(b.getKey())) continue;
+                        Workload workload = b.getValue();
+                        double[] result = measure(workload, p.threads, workload.mutates() ? fixture::beforeChurn : null);
+                        if (workload.mutates()) fixture.reset(); // leave the prebuilt history for the next one
+                        String id = b.getKey() + "," + p.key().replace('/', ',');
+                        rows.add(id + "," + result[0] + "," + result[1]);
+                        double[] base = baseline.get(id);
+                        System.out.printf("%-18s %9d %10d %7d %12.1f %10.1f %s%n", b.getKey(), p.fleet, p.history,
+                                p.threads, result[0], result[1],
+                                base == null ? "" : String.format("%+.1f%% time, %+.1f B/op",
+                                        (result[0] - base[0]) * 100 / base[0], result[1] - base[1]));
+                    }
+                }
+            }
+        }
+        if (opts.containsKey("save")) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(opts.get("save"))))) {
+                out.println("benchmark,fleet,history,threads,nsPerOp,bytesPerOp");
+                rows.forEach(out::println);
+            }
+        }
+    }
+
+    static Map<String, Workload> workloads(Fixture f, Params p) {
+        String[] regNos = new String[p.fleet];
+        for (int i = 0; i < p.fleet; i++) regNos[i] = RentalAgencyBenchmark.regNo(i);
+        String[] customerIds = new String[p.customers];
+        for (int i = 0; i < p.customers; i++) customerIds[i] = RentalAgencyBenchmark.customerId(i);
+        int slice = p.fleet / p.threads;
+        int customerSlice = p.customers / p.threads;
+
+        // Rent/return churn is charged to customer #thread only, and the history benchmark reads
+        // from the end of each slice, so its customers keep the prebuilt history size. The
+        // churn still grows the log, hence the rebuild per iteration.
+        Map<String, Workload> w = new LinkedHashMap<>();
+        w.put("rentCar", new Workload() {
+            public int run(int t) {
+                RentalAgency agency = f.agency;
+                for (int i = t * slice, end = i + slice; i < end; i++)
+                    agency.rentCar(regNos[i], customerIds[t], 1);
+                return slice;
+            }
+            public void teardown(int t) {
+                RentalAgency agency = f.agency;
+                for (int i = t * slice, end = i + slice; i < end; i++) agency.returnCar(regNos[i]);
+            }
+            public boolean mutates() { return true; }
+        });
+        w.put("returnCar", new Workload() {
+            public void setup(int t) {
+                RentalAgency agency = f.agency;
+                for (int i = t * slice, end = i + slice; i < end; i++)
+                    agency.rentCar(regNos[i], customerIds[t], 1);
+            }
+            public int run(int t) {
+                RentalAgency agency = f.agency;
+                for (int i = t * slice, end = i + slice; i < end; i++) agency.returnCar(regNos[i]);
+                return slice;
+            }
+            public boolean mutates() { return true; }
+        });
+        w.put("getAvailableCars", t -> f.agency.getAvailableCars().size() >= 0 ? 1 : 0);
+        w.put("findCustomer", t -> {
+            RentalAgency agency = f.agency;
+            int found = 0;
+            for (int i = t * customerSlice, end = i + customerSlice; i < end; i++)
+                if (agency.findCustomer(customerIds[i]) != null) found++;
+            return Math.max(found, customerSlice);
+        });
+        // Without history this would time an empty loop
+        if (p.history > 0) w.put("rentalHistory", t -> {
+            RentalAgency agency = f.agency;
+            int n = Math.min(customerSlice, 100);
+            long days = 0;
+            for (int end = (t + 1) * customerSlice, i = end - n; i < end; i++)
+                for (RentalTransaction r : agency.findCustomer(customerIds[i]).getRentalHistory()) days += r.getRentalDays();
+            return days >= 0 ? n : 0;
+        });
+        return w;
+    }
+
+    // Returns {ns per op, bytes allocated per op} over the measurement iterations;
+    // `beforeIteration`, if any, runs while every worker waits at the start of an iteration
+    static double[] measure(Workload workload, int threads, Runnable beforeIteration) throws InterruptedException {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] nanos = new long[threads];
+        long[] ops = new long[threads];
+        long[] bytes = new long[threads];
+        CyclicBarrier barrier = new CyclicBarrier(threads, beforeIteration);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                long self = Thread.currentThread().getId();
+                try {
+                    for (int it = 0; it < warmup + iterations; it++) {
+                        barrier.await();
+                        boolean measured = it >= warmup;
+                        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+                        while (System.nanoTime() < deadline) {
+                            workload.setup(id);
+                            long allocated = mx.getThreadAllocatedBytes(self);
+                            long start = System.nanoTime();
+                            int done = workload.run(id);
+                            long elapsed = System.nanoTime() - start;
+                            allocated = mx.getThreadAllocatedBytes(self) - allocated;
+                            workload.teardown(id);
+                            if (measured) {
+                                nanos[id] += elapsed;
+                                ops[id] += done;
+                                bytes[id] += allocated;
+                            }
+                        }
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+
+        long totalNanos = 0, totalOps = 0, totalBytes = 0;
+        for (int t = 0; t < threads; t++) {
+            totalNanos += nanos[t];
+            totalOps += ops[t];
+            totalBytes += bytes[t];
+        }
+        // Average latency per op as seen by each thread
+        return new double[] { (double) totalNanos / Math.max(1, totalOps), (double) totalBytes / Math.max(1, totalOps) };
+    }
+
+    static Map<String, double[]> load(Path file) throws IOException {
+        Map<String, double[]> results = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            String[] f = line.split(",");
+            if (f.length != 6 || f[0].equals("benchmark")) continue;
+            results.put(String.join(",", f[0], f[1], f[2], f[3]),
+                    new double[] { Double.parseDouble(f[4]), Double.parseDouble(f[5]) });
+        }
+        return results;
+    }
+}
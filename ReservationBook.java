@@ -0,0 +1,360 @@
+package carrentalsystem.java;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+// A booked date range for one car, half-open: [from, to)
+class Reservation {
+    private final long id;
+    private final String registrationNumber;
+    private final String customerId;
+    private final LocalDate from;
+    private final LocalDate to;
+    private final boolean rental;
+    private final Reservation pickedUp;
+
+    Reservation(long id, String registrationNumber, String customerId, LocalDate from, LocalDate to, boolean rental) {
+        this(id, registrationNumber, customerId, from, to, rental, null);
+    }
+
+    Reservation(long id, String registrationNumber, String customerId, LocalDate from, LocalDate to,
+                boolean rental, Reservation pickedUp) {
+        this.id = id;
+        this.registrationNumber = registrationNumber;
+        this.customerId = customerId;
+        this.from = from;
+        this.to = to;
+        this.rental = rental;
+        this.pickedUp = pickedUp;
+    }
+
+    public long getId() { return id; }
+    public String getRegistrationNumber() { return registrationNumber; }
+    public String getCustomerId() { return customerId; }
+    public LocalDate getFrom() { return from; }
+    public LocalDate getTo() { return to; }
+    // True when the range is held by an ongoing rental rather than an advance booking
+    public boolean isRental() { return rental; }
+    // For a rental, the customer's own advance booking it replaced, if any
+    Reservation getPickedUp() { return pickedUp; }
+
+    @Override
+    public String toString() {
+        return (rental ? "Rental" : "Reservation") + " #" + id + " " + registrationNumber +
+               " for " + customerId + " " + from + " to " + to;
+    }
+}
+
+// Per-car booking calendars. Bookings on one car never overlap, so each calendar is a
+// TreeMap keyed by start day and an overlap check only has to look at the booking starting
+// just before the range and the one starting just after: O(log n) per car.
+//
+// Advance bookings that have ended are dropped lazily whenever their car's calendar is
+// booked or listed, and by pruneEnded for the whole book.
+//
+// Every change is mirrored into BookedDays, keyed by the car's fleet id, so "which cars are
+// free for this range" is a few bitmaps ORed together rather than a calendar check per car.
+class ReservationBook {
+    private final Map<String, NavigableMap<Long, Reservation>> calendars = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ToIntFunction<String> carIds; // registration number -> fleet id, or -1
+    private final BookedDays booked = new BookedDays();
+
+    ReservationBook(ToIntFunction<String> carIds) {
+        this.carIds = carIds;
+    }
+
+    // Books [from, to) on the car, or returns null if any part of it is already taken
+    public Reservation book(String regNo, String customerId, LocalDate from, LocalDate to, boolean rental) {
+        return book(regNo, customerId, from, to, rental, r -> { });
+    }
+
+    // The same, calling `beforeBooking` (e.g. to journal it) under the calendar's lock once
+    // the booking is known to fit; if that throws, nothing is booked
+    public Reservation book(String regNo, String customerId, LocalDate from, LocalDate to, boolean rental,
+                            Consumer<Reservation> beforeBooking) {
+        if (!from.isBefore(to)) return null;
+        NavigableMap<Long, Reservation> calendar = calendars.computeIfAbsent(regNo, k -> new TreeMap<>());
+        synchronized (calendar) {
+            dropEnded(calendar, today());
+            if (overlaps(calendar, from.toEpochDay(), to.toEpochDay())) return null;
+            Reservation r = new Reservation(nextId.getAndIncrement(), regNo, customerId, from, to, rental);
+            beforeBooking.accept(r);
+            calendar.put(from.toEpochDay(), r);
+            index(r);
+            return r;
+        }
+    }
+
+    // Books [from, to) for a rental. If the customer holds an advance booking covering `from`
+    // on this car, it is picked up: the rental replaces it, so it only has to fit around
+    // everybody else's bookings. Returns null if it doesn't.
+    public Reservation bookRental(String regNo, String customerId, LocalDate from, LocalDate to) {
+        if (!from.isBefore(to)) return null;
+        NavigableMap<Long, Reservation> calendar = calendars.computeIfAbsent(regNo, k -> new TreeMap<>());
+        synchronized (calendar) {
+            dropEnded(calendar, today());
+            long start = from.toEpochDay();
+            Map.Entry<Long, Reservation> held = calendar.floorEntry(start);
+            Reservation own = held != null && !held.getValue().isRental()
+                    && held.getValue().getCustomerId().equals(customerId)
+                    && held.getValue().getTo().toEpochDay() > start ? held.getValue() : null;
+            if (own != null) calendar.remove(held.getKey());
+            if (overlaps(calendar, start, to.toEpochDay())) {
+                if (own != null) calendar.put(held.getKey(), own);
+                return null;
+            }
+            if (own != null) unindex(calendar, own);
+            Reservation r = new Reservation(nextId.getAndIncrement(), regNo, customerId, from, to, true, own);
+            calendar.put(start, r);
+            index(r);
+            return r;
+        }
+    }
+
+    // Takes back a rental booking that never turned into a rental, restoring the advance
+    // booking it picked up
+    public void unbookRental(Reservation rental) {
+        NavigableMap<Long, Reservation> calendar = calendars.get(rental.getRegistrationNumber());
+        if (calendar == null) return;
+        synchronized (calendar) {
+            if (!calendar.remove(rental.getFrom().toEpochDay(), rental)) return;
+            unindex(calendar, rental);
+            Reservation own = rental.getPickedUp();
+            if (own != null) {
+                calendar.put(own.getFrom().toEpochDay(), own);
+                index(own);
+            }
+        }
+    }
+
+    public boolean cancel(Reservation r) {
+        return cancel(r, x -> { });
+    }
+
+    // The same, calling `beforeCancel` under the calendar's lock if `r` is still booked; if
+    // that throws, `r` stays booked
+    public boolean cancel(Reservation r, Consumer<Reservation> beforeCancel) {
+        NavigableMap<Long, Reservation> calendar = calendars.get(r.getRegistrationNumber());
+        if (calendar == null) return false;
+        synchronized (calendar) {
+            if (calendar.get(r.getFrom().toEpochDay()) != r) return false;
+            beforeCancel.accept(r);
+            calendar.remove(r.getFrom().toEpochDay());
+            unindex(calendar, r);
+            return true;
+        }
+    }
+
+    // Frees the booking held by the rental that started on `from`
+    public void releaseRental(String regNo, LocalDate from) {
+        NavigableMap<Long, Reservation> calendar = calendars.get(regNo);
+        if (calendar == null) return;
+        synchronized (calendar) {
+            Reservation r = calendar.get(from.toEpochDay());
+            if (r != null && r.isRental()) {
+                calendar.remove(from.toEpochDay());
+                unindex(calendar, r);
+            }
+        }
+    }
+
+    public Reservation find(String regNo, LocalDate from) {
+        NavigableMap<Long, Reservation> calendar = calendars.get(regNo);
+        if (calendar == null) return null;
+        synchronized (calendar) {
+            return calendar.get(from.toEpochDay());
+        }
+    }
+
+    public void forEach(Consumer<Reservation> action) {
+        for (NavigableMap<Long, Reservation> calendar : calendars.values()) {
+            List<Reservation> copy;
+            synchronized (calendar) {
+                copy = new ArrayList<>(calendar.values());
+            }
+            copy.forEach(action);
+        }
+    }
+
+    public boolean isFree(String regNo, LocalDate from, LocalDate to) {
+        if (!from.isBefore(to)) return false;
+        NavigableMap<Long, Reservation> calendar = calendars.get(regNo);
+        if (calendar == null) return true;
+        synchronized (calendar) {
+            return !overlaps(calendar, from.toEpochDay(), to.toEpochDay());
+        }
+    }
+
+    // Bitmaps over fleet ids whose union is every car with a booking touching [from, to);
+    // a car's bit can be in more than one. Days before 1970 aren't indexed.
+    List<FleetIndex.Bitmap> bookedBetween(LocalDate from, LocalDate to) {
+        return booked.touching(Math.max(0, from.toEpochDay()), to.toEpochDay());
+    }
+
+    // The car under `regNo` was replaced; its bookings now belong to the new car's fleet id
+    public void reindex(String regNo) {
+        NavigableMap<Long, Reservation> calendar = calendars.get(regNo);
+        if (calendar == null) return;
+        synchronized (calendar) {
+            for (Reservation r : calendar.values()) index(r);
+        }
+    }
+
+    public List<Reservation> getReservations(String regNo) {
+        NavigableMap<Long, Reservation> calendar = calendars.get(regNo);
+        if (calendar == null) return Collections.emptyList();
+        synchronized (calendar) {
+            dropEnded(calendar, today());
+            return new ArrayList<>(calendar.values());
+        }
+    }
+
+    // Drops every advance booking that ended before `today`. Rentals stay until returned.
+    public void pruneEnded(LocalDate today) {
+        long day = today.toEpochDay();
+        for (NavigableMap<Long, Reservation> calendar : calendars.values()) {
+            synchronized (calendar) {
+                dropEnded(calendar, day);
+            }
+        }
+    }
+
+    private static long today() { return LocalDate.now().toEpochDay(); }
+
+    // Bookings never overlap, so ended ones are all at the head of the calendar
+    private void dropEnded(NavigableMap<Long, Reservation> calendar, long today) {
+        List<Reservation> dropped = null;
+        Iterator<Reservation> it = calendar.values().iterator();
+        while (it.hasNext()) {
+            Reservation r = it.next();
+            if (r.getTo().toEpochDay() > today) break;
+            if (!r.isRental()) {
+                it.remove();
+                if (dropped == null) dropped = new ArrayList<>();
+                dropped.add(r);
+            }
+        }
+        if (dropped != null) for (Reservation r : dropped) unindex(calendar, r);
+    }
+
+    // Both called under the calendar's lock, after the calendar change; when unindexing,
+    // nothing left in the calendar may overlap the booking
+    private void index(Reservation r) {
+        int car = carIds.applyAsInt(r.getRegistrationNumber());
+        if (car >= 0) booked.mark(car, r.getFrom().toEpochDay(), r.getTo().toEpochDay());
+    }
+
+    private void unindex(NavigableMap<Long, Reservation> calendar, Reservation r) {
+        int car = carIds.applyAsInt(r.getRegistrationNumber());
+        if (car >= 0) booked.unmark(car, r.getFrom().toEpochDay(), r.getTo().toEpochDay(), calendar);
+    }
+
+    private static boolean overlaps(NavigableMap<Long, Reservation> calendar, long from, long to) {
+        Map.Entry<Long, Reservation> before = calendar.floorEntry(from);
+        if (before != null && before.getValue().getTo().toEpochDay() > from) return true;
+        Long next = calendar.higherKey(from);
+        return next != null && next < to;
+    }
+
+    // Which cars have something booked on which days, as bitmaps over fleet ids in a tree over
+    // epoch days: node (level, n) covers days [n << level, (n + 1) << level) and has a car's
+    // bit set while any booking of that car touches the span. A range is tiled exactly by
+    // O(log days) nodes, so a fleet-wide search ORs that many bitmaps. Marking a booking of d
+    // days touches about 2d + LEVELS nodes. Nodes are created on first use and kept.
+    static final class BookedDays {
+        static final int LEVELS = 12; // top nodes span 2048 days
+
+        // Nodes for n in [base, base + nodes.length()); replaced whole when it has to grow
+        private static final class Level {
+            final long base;
+            final AtomicReferenceArray<FleetIndex.Bitmap> nodes;
+
+            Level(long base, int length) {
+                this.base = base;
+                this.nodes = new AtomicReferenceArray<>(length);
+            }
+        }
+
+        private volatile Level[] levels = new Level[LEVELS];
+
+        BookedDays() {
+            for (int i = 0; i < LEVELS; i++) levels[i] = new Level(0, 0);
+        }
+
+        void mark(int car, long from, long to) {
+            from = Math.max(0, from);
+            for (int level = 0; level < LEVELS && from < to; level++) {
+                for (long n = from >> level, last = (to - 1) >> level; n <= last; n++) node(level, n).set(car);
+            }
+        }
+
+        // `calendar` is the car's, with nothing overlapping the booking, locked by the caller. A
+        // node keeps the bit while another booking still touches it, which can only be the
+        // nearest one on either side; once every node of a level does, so do all the nodes above.
+        void unmark(int car, long from, long to, NavigableMap<Long, Reservation> calendar) {
+            from = Math.max(0, from);
+            Map.Entry<Long, Reservation> before = calendar.lowerEntry(from);
+            Long after = calendar.ceilingKey(to);
+            long freeFrom = before == null ? Long.MIN_VALUE : before.getValue().getTo().toEpochDay();
+            long freeTo = after == null ? Long.MAX_VALUE : after;
+            for (int level = 0; level < LEVELS && from < to; level++) {
+                boolean cleared = false;
+                for (long n = from >> level, last = (to - 1) >> level; n <= last; n++) {
+                    if (n << level < freeFrom || (n + 1) << level > freeTo) continue;
+                    FleetIndex.Bitmap node = existing(level, n);
+                    if (node != null) node.clear(car);
+                    cleared = true;
+                }
+                if (!cleared) return;
+            }
+        }
+
+        List<FleetIndex.Bitmap> touching(long from, long to) {
+            List<FleetIndex.Bitmap> nodes = new ArrayList<>();
+            while (from < to) {
+                int level = Math.min(LEVELS - 1, Long.numberOfTrailingZeros(from));
+                while ((1L << level) > to - from) level--;
+                FleetIndex.Bitmap node = existing(level, from >> level);
+                if (node != null) nodes.add(node);
+                from += 1L << level;
+            }
+            return nodes;
+        }
+
+        private FleetIndex.Bitmap existing(int level, long n) {
+            Level l = levels[level];
+            long i = n - l.base;
+            return i >= 0 && i < l.nodes.length() ? l.nodes.get((int) i) : null;
+        }
+
+        private FleetIndex.Bitmap node(int level, long n) {
+            FleetIndex.Bitmap node = existing(level, n);
+            if (node != null) return node;
+            synchronized (this) {
+                Level l = levels[level];
+                long i = n - l.base;
+                if (i < 0 || i >= l.nodes.length()) {
+                    // Grow to cover n with as much room again on that side
+                    long start = l.nodes.length() == 0 ? n : Math.min(l.base, n - (l.base + l.nodes.length() - n));
+                    long end = l.nodes.length() == 0 ? n + 1 : Math.max(l.base + l.nodes.length(), n + (n - l.base));
+                    start = Math.max(0, start);
+                    Level grown = new Level(start, (int) (end - start));
+                    for (int j = 0; j < l.nodes.length(); j++) grown.nodes.set((int) (l.base - start) + j, l.nodes.get(j));
+                    Level[] replaced = levels.clone();
+                    replaced[level] = l = grown;
+                    levels = replaced;
+                    i = n - l.base;
+                }
+                node = l.nodes.get((int) i);
+                if (node == null) l.nodes.set((int) i, node = new FleetIndex.Bitmap());
+                return node;
+            }
+        }
+    }
+}
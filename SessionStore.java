@@ -0,0 +1,253 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// A logged-in user. Sessions end after `idle` without use or at their absolute expiry,
+// whichever comes first.
+class Session {
+    private final String key;
+    private final String username;
+    private final long createdMillis;
+    private final long expiresMillis;
+    private volatile long lastAccessMillis;
+    private volatile boolean ended;
+
+    // Timing wheel bookkeeping, only touched under the wheel's lock
+    Session wheelNext;
+    long wheelTick;
+
+    Session(String key, String username, long createdMillis, long lastAccessMillis, long expiresMillis) {
+        this.key = key;
+        this.username = username;
+        this.createdMillis = createdMillis;
+        this.lastAccessMillis = lastAccessMillis;
+        this.expiresMillis = expiresMillis;
+    }
+
+    public String getUsername() { return username; }
+    public long getCreatedMillis() { return createdMillis; }
+    public long getLastAccessMillis() { return lastAccessMillis; }
+    public long getExpiresMillis() { return expiresMillis; }
+
+    String getKey() { return key; }
+    void touch(long now) { lastAccessMillis = now; }
+    boolean isEnded() { return ended; }
+    void end() { ended = true; }
+
+    long deadline(long idleMillis) { return Math.min(expiresMillis, lastAccessMillis + idleMillis); }
+}
+
+// Session tokens issued after a successful login. Validating a token is one SHA-256 and one
+// concurrent map lookup. The map is keyed by the token's hash, so neither the map nor the
+// session file holds usable tokens.
+//
+// Expiry uses a hierarchical timing wheel (4 levels of 64 slots): a session is filed under
+// the tick of its deadline, and each tick only looks at the sessions due in it, so expiring
+// millions of sessions costs O(1) each instead of a periodic scan of the whole store.
+// Using a session doesn't touch the wheel; when a session comes due the wheel re-checks its
+// deadline and files it again if it was used in the meantime.
+class SessionStore {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final int MAGIC = 0x53455353; // "SESS"
+
+    private final long idleMillis;
+    private final long absoluteMillis;
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final Session[][] wheel = new Session[LEVELS][SLOTS];
+    private long currentTick;
+    private ScheduledExecutorService expiry;
+
+    public SessionStore(long idleMillis, long absoluteMillis) {
+        this(idleMillis, absoluteMillis, 1000, System::currentTimeMillis);
+    }
+
+    SessionStore(long idleMillis, long absoluteMillis, long tickMillis, LongSupplier clock) {
+        this.idleMillis = idleMillis;
+        this.absoluteMillis = absoluteMillis;
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+        this.currentTick = clock.getAsLong() / tickMillis;
+    }
+
+    // Issues a new token for `username`
+    public String create(String username) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long now = clock.getAsLong();
+        add(new Session(keyOf(token), username, now, now, now + absoluteMillis));
+        return token;
+    }
+
+    // The live session for `token`, marked as used; null if unknown or expired
+    public Session validate(String token) {
+        if (token == null) return null;
+        Session s = sessions.get(keyOf(token));
+        if (s == null) return null;
+        long now = clock.getAsLong();
+        if (s.deadline(idleMillis) <= now) {
+            end(s);
+            return null;
+        }
+        s.touch(now);
+        return s;
+    }
+
+    // Logs the session out; it is dropped from the wheel when it comes due
+    public boolean invalidate(String token) {
+        Session s = token == null ? null : sessions.get(keyOf(token));
+        if (s == null) return false;
+        end(s);
+        return true;
+    }
+
+    public int size() { return sessions.size(); }
+
+    public void forEach(Consumer<Session> action) { sessions.values().forEach(action); }
+
+    // Expires everything due by now; returns how many sessions ended
+    public int expire() {
+        long target = clock.getAsLong() / tickMillis;
+        int expired = 0;
+        synchronized (wheel) {
+            while (currentTick < target) {
+                currentTick++;
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) continue;
+                    int slot = (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+                    Session s = wheel[level][slot];
+                    wheel[level][slot] = null;
+                    while (s != null) {
+                        Session next = s.wheelNext;
+                        if (!s.isEnded()) file(s, s.wheelTick);
+                        s = next;
+                    }
+                }
+                int slot = (int) currentTick & (SLOTS - 1);
+                Session s = wheel[0][slot];
+                wheel[0][slot] = null;
+                while (s != null) {
+                    Session next = s.wheelNext;
+                    if (!s.isEnded()) {
+                        long deadline = s.deadline(idleMillis);
+                        if (deadline / tickMillis > currentTick) {
+                            file(s, deadline / tickMillis);
+                        } else {
+                            end(s);
+                            expired++;
+                        }
+                    }
+                    s = next;
+                }
+            }
+        }
+        return expired;
+    }
+
+    // Runs expire() in the background every tick
+    public synchronized void startExpiry() {
+        if (expiry != null) return;
+        expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        expiry.scheduleAtFixedRate(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void close() {
+        if (expiry != null) expiry.shutdownNow();
+        expiry = null;
+    }
+
+    // Persistence: [magic][count] then (key, username, created, lastAccess, expires) per
+    // session; written to a temporary file and renamed over the old one
+
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(sessions.size());
+            for (Session s : sessions.values()) {
+                out.writeUTF(s.getKey());
+                out.writeUTF(s.getUsername());
+                out.writeLong(s.getCreatedMillis());
+                out.writeLong(s.getLastAccessMillis());
+                out.writeLong(s.getExpiresMillis());
+            }
+            out.writeUTF(""); // end marker; the count above is only a sizing hint
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Adds the still-live sessions saved in `file`; returns how many
+    public int load(Path file) throws IOException {
+        int loaded = 0;
+        long now = clock.getAsLong();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a session file");
+            in.readInt();
+            String key;
+            while (!(key = in.readUTF()).isEmpty()) {
+                Session s = new Session(key, in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                if (s.deadline(idleMillis) > now) {
+                    add(s);
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private void add(Session s) {
+        sessions.put(s.getKey(), s);
+        synchronized (wheel) {
+            file(s, Math.max(currentTick + 1, s.deadline(idleMillis) / tickMillis));
+        }
+    }
+
+    private void end(Session s) {
+        s.end();
+        sessions.remove(s.getKey(), s);
+    }
+
+    // Puts a session in the slot for `tick`: level 0 if it is due within 64 ticks, level 1
+    // within 64^2, and so on; the highest level takes anything further out and re-files it.
+    // While expire() cascades, `tick` may be the current tick, whose slot is processed next.
+    private void file(Session s, long tick) {
+        if (tick < currentTick) tick = currentTick;
+        s.wheelTick = tick;
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) level++;
+        long slotTick = level == LEVELS - 1 ? Math.min(tick, currentTick + (1L << (SLOT_BITS * LEVELS)) - 1) : tick;
+        int slot = (int) (slotTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+        s.wheelNext = wheel[level][slot];
+        wheel[level][slot] = s;
+    }
+
+    private static String keyOf(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
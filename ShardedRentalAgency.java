@@ -0,0 +1,225 @@
+package carrentalsystem.java;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+// A rental business with many branches, each its own RentalAgency (shard) owning the cars
+// parked there and their active rentals, so branches share no maps or locks. A router maps
+// every registration number to the branch that currently holds the car.
+//
+// Customers are registered once here and copied into a branch the first time they rent
+// there; their history is the union of their branch histories.
+//
+// Operations on one car at its branch hold that branch's read lock, so they run
+// concurrently with each other (RentalAgency is thread-safe) and only wait for two-branch
+// operations. Moving a car between branches (transferCar, and the return of a one-way
+// rental) holds the write locks of both branches, taken in branch order so two opposite
+// moves can't deadlock. Nobody can see the car in both branches or in neither.
+//
+// Branches are in memory. RentalAgency.removeCar is journaled, but the router, the drop-off
+// branches and the customer registry aren't, so this class can't be made persistent yet.
+class ShardedRentalAgency {
+    private final String[] branches;
+    private final RentalAgency[] shards;
+    private final ReentrantReadWriteLock[] locks;
+    private final Map<String, Integer> route = new ConcurrentHashMap<>();
+    private final Map<String, Integer> dropOff = new ConcurrentHashMap<>(); // one-way rentals
+    private final Map<String, Customer> customers = new ConcurrentHashMap<>();
+
+    ShardedRentalAgency(String... branches) {
+        if (branches.length == 0) throw new IllegalArgumentException("no branches");
+        this.branches = branches.clone();
+        this.shards = new RentalAgency[branches.length];
+        this.locks = new ReentrantReadWriteLock[branches.length];
+        for (int i = 0; i < branches.length; i++) {
+            shards[i] = new RentalAgency();
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    public int getBranchCount() { return branches.length; }
+    public String getBranchName(int branch) { return branches[branch]; }
+    public RentalAgency getBranch(String name) { return shards[branchIndex(name)]; }
+
+    public void addCar(String branch, Car car) {
+        int b = branchIndex(branch);
+        locks[b].readLock().lock();
+        try {
+            if (route.putIfAbsent(car.getRegistrationNumber(), b) != null)
+                throw new IllegalArgumentException("Car already registered: " + car.getRegistrationNumber());
+            try {
+                shards[b].addCar(car);
+            } catch (RuntimeException e) {
+                route.remove(car.getRegistrationNumber(), b); // the number stays free
+                throw e;
+            }
+        } finally {
+            locks[b].readLock().unlock();
+        }
+    }
+
+    public void addCustomer(Customer customer) {
+        customers.put(customer.getCustomerId(), customer);
+    }
+
+    // The registered customer. Rentals are recorded on each branch's own copy of it, so this
+    // one's getRentalHistory() stays empty; use getRentalHistory(customerId) instead.
+    public Customer findCustomer(String customerId) { return customers.get(customerId); }
+
+    // The branch holding the car, or null if there is no such car
+    public String findBranch(String regNo) {
+        Integer b = route.get(regNo);
+        return b == null ? null : branches[b];
+    }
+
+    public Car findCar(String regNo) {
+        return atCarBranch(regNo, b -> shards[b].findCar(regNo));
+    }
+
+    public RentalTransaction findActiveRental(String regNo) {
+        return atCarBranch(regNo, b -> shards[b].findActiveRental(regNo));
+    }
+
+    // Rents the car at the branch it is parked at, to be returned there
+    public RentalTransaction rentCar(String regNo, String customerId, int days) {
+        return atCarBranch(regNo, b -> {
+            if (!joinBranch(b, customerId)) return null;
+            return shards[b].rentCar(regNo, customerId, days);
+        });
+    }
+
+    // Rents the car to be returned at `returnBranch`; refused if the car has bookings at
+    // its current branch, since it won't be there for them. Holds the branch exclusively so
+    // a return can't see the rental without its drop-off.
+    public RentalTransaction rentCarOneWay(String regNo, String customerId, int days, String returnBranch) {
+        int to = branchIndex(returnBranch);
+        return atCarBranch(regNo, true, b -> {
+            if (!joinBranch(b, customerId) || !shards[b].getReservations(regNo).isEmpty()) return null;
+            RentalTransaction t = shards[b].rentCar(regNo, customerId, days);
+            if (t != null && to != b) dropOff.put(regNo, to);
+            return t;
+        });
+    }
+
+    // Closes the rental; for a one-way rental the car also moves to its drop-off branch
+    public boolean returnCar(String regNo) {
+        while (true) {
+            Integer from = route.get(regNo);
+            if (from == null) return false;
+            Integer to = dropOff.get(regNo);
+            if (to == null) {
+                Boolean returned = atCarBranch(regNo, b -> dropOff.containsKey(regNo) ? null : shards[b].returnCar(regNo));
+                if (returned != null) return returned;
+                continue; // became one-way in between
+            }
+            lockBoth(from, to);
+            try {
+                if (!from.equals(route.get(regNo)) || !to.equals(dropOff.get(regNo))) continue;
+                if (!shards[from].returnCar(regNo)) return false;
+                dropOff.remove(regNo);
+                move(regNo, from, to); // stays put if it was booked at `from` meanwhile
+                return true;
+            } finally {
+                unlockBoth(from, to);
+            }
+        }
+    }
+
+    // Moves an available car with no bookings to `toBranch`; false if it is out or booked
+    public boolean transferCar(String regNo, String toBranch) {
+        int to = branchIndex(toBranch);
+        while (true) {
+            Integer from = route.get(regNo);
+            if (from == null) return false;
+            if (from == to) return true;
+            lockBoth(from, to);
+            try {
+                if (!from.equals(route.get(regNo))) continue;
+                return move(regNo, from, to);
+            } finally {
+                unlockBoth(from, to);
+            }
+        }
+    }
+
+    // Cars available now, over all branches
+    public int countAvailableCars() {
+        int n = 0;
+        for (RentalAgency shard : shards) n += shard.getFleet().count(FleetQuery.available());
+        return n;
+    }
+
+    public int countCars() { return route.size(); }
+
+    // The customer's rentals at every branch, in branch order
+    public List<RentalTransaction> getRentalHistory(String customerId) {
+        List<RentalTransaction> history = new ArrayList<>();
+        for (RentalAgency shard : shards) {
+            Customer c = shard.findCustomer(customerId);
+            if (c != null) history.addAll(c.getRentalHistory());
+        }
+        return history;
+    }
+
+    // Caller holds both write locks
+    private boolean move(String regNo, int from, int to) {
+        Car car = shards[from].removeCar(regNo);
+        if (car == null) return false;
+        // A fresh Car for the new branch; the old object stays with the old branch's history
+        Car moved = car instanceof LuxuryCar
+                ? new LuxuryCar(regNo, car.getModel(), car.getRentalPricePerDay())
+                : new Car(regNo, car.getModel(), car.getRentalPricePerDay()) {};
+        shards[to].addCar(moved);
+        route.put(regNo, to);
+        return true;
+    }
+
+    // Runs `op` under the read lock of the car's branch, retrying if the car moves before
+    // the lock is held; null if there is no such car
+    private <T> T atCarBranch(String regNo, IntFunction<T> op) {
+        return atCarBranch(regNo, false, op);
+    }
+
+    private <T> T atCarBranch(String regNo, boolean exclusive, IntFunction<T> op) {
+        while (true) {
+            Integer b = route.get(regNo);
+            if (b == null) return null;
+            java.util.concurrent.locks.Lock lock = exclusive ? locks[b].writeLock() : locks[b].readLock();
+            lock.lock();
+            try {
+                if (b.equals(route.get(regNo))) return op.apply(b);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean joinBranch(int b, String customerId) {
+        if (shards[b].findCustomer(customerId) != null) return true;
+        Customer c = customers.get(customerId);
+        if (c == null) return false;
+        synchronized (shards[b]) {
+            if (shards[b].findCustomer(customerId) == null) {
+                shards[b].addCustomer(new Customer(c.getCustomerId(), c.getName(), c.getContactInfo(), c.getTier()));
+            }
+        }
+        return true;
+    }
+
+    private void lockBoth(int a, int b) {
+        locks[Math.min(a, b)].writeLock().lock();
+        if (a != b) locks[Math.max(a, b)].writeLock().lock();
+    }
+
+    private void unlockBoth(int a, int b) {
+        if (a != b) locks[Math.max(a, b)].writeLock().unlock();
+        locks[Math.min(a, b)].writeLock().unlock();
+    }
+
+    private int branchIndex(String name) {
+        for (int i = 0; i < branches.length; i++) if (branches[i].equals(name)) return i;
+        throw new IllegalArgumentException("Unknown branch: " + name);
+    }
+}
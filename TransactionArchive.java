@@ -0,0 +1,244 @@
+package carrentalsystem.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+// Read side of the columnar rental archive written by TransactionExporter. Every segment
+// is memory-mapped and its columns read in place, so opening an archive only decodes the
+// car and customer dictionaries, and scans run straight over the page cache.
+//
+// File: segments back to back, all little-endian. Segment:
+//   header (48 bytes): int magic, firstRow, rows, carsFrom, cars, customersFrom, customers,
+//                      closed, open, unused, long length (of the whole segment)
+//   columns, `rows` values each: long cents, int rentalDay, returnDay, car, customer, days
+//   int[closed] row, int[closed] returnDay: rentals exported while open, returned since
+//   int[open] rows not returned as of this segment (the exporter's checkpoint)
+//   cars carsFrom..cars-1: regNo, model (short length + UTF-8), byte luxury
+//   customers customersFrom..customers-1: id, name
+// Days are epoch days and car/customer ids are the log's fleet ids and customer indexes.
+class TransactionArchive {
+    static final int MAGIC = 0x53585452; // "RTXS"
+    static final int HEADER = 48;
+    static final int SEGMENT_ROWS = 1 << 24; // keeps a segment well inside one mapping
+    static final int ROW_BYTES = 8 + 5 * 4;
+
+    private static final class Segment {
+        final int firstRow, rows;
+        final LongBuffer cents;
+        final IntBuffer rentalDay, returnDay, car, customer, days;
+
+        Segment(int firstRow, int rows, ByteBuffer map) {
+            this.firstRow = firstRow;
+            this.rows = rows;
+            int at = HEADER;
+            cents = column(map, at, rows * 8).asLongBuffer();
+            rentalDay = column(map, at += rows * 8, rows * 4).asIntBuffer();
+            returnDay = column(map, at += rows * 4, rows * 4).asIntBuffer();
+            car = column(map, at += rows * 4, rows * 4).asIntBuffer();
+            customer = column(map, at += rows * 4, rows * 4).asIntBuffer();
+            days = column(map, at + rows * 4, rows * 4).asIntBuffer();
+        }
+
+        private static ByteBuffer column(ByteBuffer map, int at, int bytes) {
+            return map.slice(at, bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    // What the last complete segment says: rows and dictionary sizes exported so far, and
+    // the rows still open then
+    static final class Checkpoint {
+        long end;
+        int rows, cars, customers;
+        int[] open = new int[0];
+    }
+
+    private final Segment[] segments;
+    private final int[] firstRows;
+    private final int rows;
+    private final int open;
+    private final int[] closedRows;  // sorted
+    private final int[] closedDays;
+    private final String[] regNos, models, customerIds, customerNames;
+    private final BitSet luxury;
+
+    private TransactionArchive(List<Segment> segments, int open, long[] closed, int closedCount, String[] regNos,
+                               String[] models, BitSet luxury, String[] customerIds, String[] customerNames) {
+        segments.removeIf(s -> s.rows == 0); // segments with only returns; keeps firstRows distinct
+        this.segments = segments.toArray(new Segment[0]);
+        this.firstRows = new int[this.segments.length];
+        for (int i = 0; i < firstRows.length; i++) firstRows[i] = this.segments[i].firstRow;
+        Segment last = this.segments.length == 0 ? null : this.segments[this.segments.length - 1];
+        this.rows = last == null ? 0 : last.firstRow + last.rows;
+        this.open = open;
+        Arrays.sort(closed, 0, closedCount);
+        this.closedRows = new int[closedCount];
+        this.closedDays = new int[closedCount];
+        for (int i = 0; i < closedCount; i++) {
+            closedRows[i] = (int) (closed[i] >>> 32);
+            closedDays[i] = (int) closed[i];
+        }
+        this.regNos = regNos;
+        this.models = models;
+        this.luxury = luxury;
+        this.customerIds = customerIds;
+        this.customerNames = customerNames;
+    }
+
+    public static TransactionArchive open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Segment> segments = new ArrayList<>();
+            long[] closed = new long[16];
+            int closedCount = 0, open = 0, rows = 0, cars = 0, customers = 0;
+            String[] regNos = new String[0], models = new String[0], ids = new String[0], names = new String[0];
+            BitSet luxury = new BitSet();
+            ByteBuffer h;
+            for (long pos = 0; (h = header(ch, pos, rows)) != null; pos += h.getLong(40)) {
+                ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos, h.getLong(40)).order(ByteOrder.LITTLE_ENDIAN);
+                int n = h.getInt(8), segClosed = h.getInt(28);
+                segments.add(new Segment(rows, n, map));
+                rows += n;
+
+                int at = HEADER + n * ROW_BYTES;
+                if (closedCount + segClosed > closed.length)
+                    closed = Arrays.copyOf(closed, Math.max(closed.length * 2, closedCount + segClosed));
+                for (int i = 0; i < segClosed; i++, at += 4)
+                    closed[closedCount++] = (long) map.getInt(at) << 32 | (map.getInt(at + segClosed * 4) & 0xFFFFFFFFL);
+                at += segClosed * 4;
+                open = h.getInt(32);
+                map.position(at + open * 4);
+
+                int carsTo = h.getInt(16), customersTo = h.getInt(24);
+                if (carsTo > regNos.length) {
+                    regNos = Arrays.copyOf(regNos, Math.max(carsTo, regNos.length * 2));
+                    models = Arrays.copyOf(models, regNos.length);
+                }
+                for (int id = h.getInt(12); id < carsTo; id++) {
+                    regNos[id] = getString(map);
+                    models[id] = getString(map);
+                    if (map.get() != 0) luxury.set(id);
+                }
+                if (customersTo > ids.length) {
+                    ids = Arrays.copyOf(ids, Math.max(customersTo, ids.length * 2));
+                    names = Arrays.copyOf(names, ids.length);
+                }
+                for (int i = h.getInt(20); i < customersTo; i++) {
+                    ids[i] = getString(map);
+                    names[i] = getString(map);
+                }
+                cars = Math.max(cars, carsTo);
+                customers = Math.max(customers, customersTo);
+            }
+            return new TransactionArchive(segments, open, closed, closedCount, Arrays.copyOf(regNos, cars),
+                    Arrays.copyOf(models, cars), luxury, Arrays.copyOf(ids, customers), Arrays.copyOf(names, customers));
+        }
+    }
+
+    // Scans only the segment headers, plus the open rows of the last segment
+    static Checkpoint checkpoint(FileChannel ch) throws IOException {
+        Checkpoint cp = new Checkpoint();
+        ByteBuffer h, open = ByteBuffer.allocate(0);
+        long openAt = 0;
+        while ((h = header(ch, cp.end, cp.rows)) != null) {
+            int n = h.getInt(8);
+            cp.rows += n;
+            cp.cars = h.getInt(16);
+            cp.customers = h.getInt(24);
+            open = ByteBuffer.allocate(h.getInt(32) * 4).order(ByteOrder.LITTLE_ENDIAN);
+            openAt = cp.end + HEADER + (long) n * ROW_BYTES + h.getInt(28) * 8L;
+            cp.end += h.getLong(40);
+        }
+        while (open.hasRemaining()) if (ch.read(open, openAt + open.position()) < 0) throw new IOException("short read");
+        cp.open = new int[open.capacity() / 4];
+        open.flip().asIntBuffer().get(cp.open);
+        return cp;
+    }
+
+    // The header at `pos` if a complete segment continuing from row `rows` starts there
+    private static ByteBuffer header(FileChannel ch, long pos, int rows) throws IOException {
+        long size = ch.size();
+        if (size - pos < HEADER) return null;
+        ByteBuffer h = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        while (h.hasRemaining()) if (ch.read(h, pos + h.position()) < 0) return null;
+        int n = h.getInt(8);
+        long length = h.getLong(40);
+        if (h.getInt(0) != MAGIC || h.getInt(4) != rows || n < 0 || n > SEGMENT_ROWS) return null;
+        long minLength = HEADER + (long) n * ROW_BYTES + h.getInt(28) * 8L + h.getInt(32) * 4L;
+        if (length < minLength || length > Integer.MAX_VALUE || length > size - pos) return null;
+        return h;
+    }
+
+    private static String getString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getShort() & 0xFFFF];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int size() { return rows; }
+
+    // Rentals not returned as of the last export
+    public int openRentals() { return open; }
+
+    // Column access by row
+
+    public int rentalDay(int row) { Segment s = segment(row); return s.rentalDay.get(row - s.firstRow); }
+    public int carId(int row) { Segment s = segment(row); return s.car.get(row - s.firstRow); }
+    public int customerIndex(int row) { Segment s = segment(row); return s.customer.get(row - s.firstRow); }
+    public int days(int row) { Segment s = segment(row); return s.days.get(row - s.firstRow); }
+    public long cents(int row) { Segment s = segment(row); return s.cents.get(row - s.firstRow); }
+
+    // TransactionLog.NOT_RETURNED if the rental was open at the last export
+    public int returnDay(int row) {
+        Segment s = segment(row);
+        int day = s.returnDay.get(row - s.firstRow);
+        if (day != TransactionLog.NOT_RETURNED) return day;
+        int i = Arrays.binarySearch(closedRows, row);
+        return i < 0 ? day : closedDays[i];
+    }
+
+    public String regNo(int carId) { return regNos[carId]; }
+    public String model(int carId) { return models[carId]; }
+    public boolean isLuxury(int carId) { return luxury.get(carId); }
+    public String customerId(int customerIndex) { return customerIds[customerIndex]; }
+    public String customerName(int customerIndex) { return customerNames[customerIndex]; }
+
+    // Analytics: sequential scans over the mapped columns
+
+    public long totalCents() {
+        long total = 0;
+        for (Segment s : segments) for (int i = 0; i < s.rows; i++) total += s.cents.get(i);
+        return total;
+    }
+
+    public SortedMap<LocalDate, Long> getRevenuePerDay() {
+        Map<Integer, long[]> perDay = new HashMap<>();
+        for (Segment s : segments) {
+            for (int i = 0; i < s.rows; i++) perDay.computeIfAbsent(s.rentalDay.get(i), d -> new long[1])[0] += s.cents.get(i);
+        }
+        SortedMap<LocalDate, Long> result = new TreeMap<>();
+        perDay.forEach((day, cents) -> result.put(LocalDate.ofEpochDay(day), cents[0]));
+        return result;
+    }
+
+    public Map<String, Long> getRevenuePerModel() {
+        long[] perCar = new long[regNos.length];
+        for (Segment s : segments) for (int i = 0; i < s.rows; i++) perCar[s.car.get(i)] += s.cents.get(i);
+        Map<String, Long> result = new TreeMap<>();
+        for (int id = 0; id < perCar.length; id++) if (perCar[id] != 0) result.merge(models[id], perCar[id], Long::sum);
+        return result;
+    }
+
+    private Segment segment(int row) {
+        if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Row: " + row);
+        int i = Arrays.binarySearch(firstRows, row);
+        return segments[i < 0 ? -i - 2 : i];
+    }
+}
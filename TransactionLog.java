@@ -0,0 +1,203 @@
+package carrentalsystem.java;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Append-only rental history stored as primitive columns (about 33 bytes per rental):
+// rental/return epoch days, fleet id of the car, dense index of the customer, rental days,
+// cost in cents, and the next row rented by the same customer (so each customer's history
+// is a chain through the shared columns instead of a list of objects per customer).
+// RentalTransaction objects are just (log, row) handles created on demand.
+//
+// Appends are lock-free: a writer claims a row with one getAndIncrement, fills its columns,
+// then marks it written. The readable size only advances over a contiguous run of written
+// rows, so readers never see holes.
+class TransactionLog extends AbstractList<RentalTransaction> {
+    static final int NOT_RETURNED = Integer.MIN_VALUE;
+    static final int NO_ROW = -1;
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 17;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final FleetIndex fleet;
+    private final CustomerDirectory customers;
+
+    // Grown by copy under `grow` as rows arrive, like CustomerDirectory's pages; a chunk's
+    // slot never changes once the array holding it is published
+    private volatile Chunk[] chunks = new Chunk[0];
+    private final Object grow = new Object();
+    private final AtomicInteger claimed = new AtomicInteger();
+    private final AtomicInteger published = new AtomicInteger();
+
+    TransactionLog(FleetIndex fleet, CustomerDirectory customers) {
+        this.fleet = fleet;
+        this.customers = customers;
+    }
+
+    private static final class Chunk {
+        final int[] rentalDay = new int[CHUNK_SIZE];
+        final int[] returnDay = new int[CHUNK_SIZE];
+        final int[] car = new int[CHUNK_SIZE];
+        final int[] customer = new int[CHUNK_SIZE];
+        final int[] days = new int[CHUNK_SIZE];
+        final int[] nextForCustomer = new int[CHUNK_SIZE];
+        final long[] cents = new long[CHUNK_SIZE];
+        final byte[] written = new byte[CHUNK_SIZE];
+    }
+
+    public RentalTransaction append(Car car, Customer customer, LocalDate rentalDate, int days, double cost) {
+        int row = claimed.getAndIncrement();
+        if (row < 0 || (row >>> CHUNK_BITS) >= MAX_CHUNKS) throw new IllegalStateException("Transaction log is full");
+        Chunk c = chunk(row >>> CHUNK_BITS);
+        int i = row & CHUNK_MASK;
+        c.rentalDay[i] = (int) rentalDate.toEpochDay();
+        INTS.setRelease(c.returnDay, i, NOT_RETURNED);
+        c.car[i] = car.getFleetId();
+        c.customer[i] = customer.getIndex();
+        c.days[i] = days;
+        c.nextForCustomer[i] = NO_ROW;
+        c.cents[i] = Math.round(cost * 100);
+        // Volatile, not release: publish() reads `published` next, and a release store may be
+        // reordered after that load. Two writers could then each miss the other's flag and
+        // leave a finished row unpublished until a later append.
+        BYTES.setVolatile(c.written, i, (byte) 1);
+        publish();
+        return new RentalTransaction(this, row);
+    }
+
+    // Moves the published size forward over every row that has been written so far.
+    // Any writer may advance it on behalf of slower writers that finished earlier.
+    private void publish() {
+        while (true) {
+            int size = published.get();
+            if (size >= claimed.get() || !isWritten(size)) return;
+            published.compareAndSet(size, size + 1);
+        }
+    }
+
+    private boolean isWritten(int row) {
+        Chunk[] p = chunks;
+        int n = row >>> CHUNK_BITS;
+        return n < p.length && (byte) BYTES.getVolatile(p[n].written, row & CHUNK_MASK) != 0;
+    }
+
+    private Chunk chunk(int n) {
+        Chunk[] p = chunks;
+        if (n < p.length) return p[n];
+        synchronized (grow) {
+            p = chunks;
+            if (n >= p.length) {
+                Chunk[] grown = Arrays.copyOf(p, n + 1);
+                for (int i = p.length; i <= n; i++) grown[i] = new Chunk();
+                chunks = grown;
+                p = grown;
+            }
+            return p[n];
+        }
+    }
+
+    private Chunk at(int row) { return chunks[row >>> CHUNK_BITS]; }
+
+    // Column access by row
+
+    int rentalDay(int row) { return at(row).rentalDay[row & CHUNK_MASK]; }
+    int returnDay(int row) { return (int) INTS.getAcquire(at(row).returnDay, row & CHUNK_MASK); }
+    int carId(int row) { return at(row).car[row & CHUNK_MASK]; }
+    int customerIndex(int row) { return at(row).customer[row & CHUNK_MASK]; }
+    int days(int row) { return at(row).days[row & CHUNK_MASK]; }
+    long cents(int row) { return at(row).cents[row & CHUNK_MASK]; }
+    int nextForCustomer(int row) { return at(row).nextForCustomer[row & CHUNK_MASK]; }
+
+    Car car(int row) { return fleet.get(carId(row)); }
+    Customer customer(int row) { return customers.get(customerIndex(row)); }
+
+    void close(int row, LocalDate returnDate) {
+        INTS.setRelease(at(row).returnDay, row & CHUNK_MASK, (int) returnDate.toEpochDay());
+    }
+
+    // Called by the owning customer, under its lock
+    void linkNextForCustomer(int row, int next) { at(row).nextForCustomer[row & CHUNK_MASK] = next; }
+
+    // Copies `length` rows starting at `from` of one column into `out`; used by reports to read
+    // whole chunks at a time
+    void copyColumn(Column column, int from, int length, int[] out, int offset) {
+        while (length > 0) {
+            Chunk c = at(from);
+            int i = from & CHUNK_MASK;
+            int n = Math.min(length, CHUNK_SIZE - i);
+            int[] src = column == Column.RENTAL_DAY ? c.rentalDay
+                      : column == Column.RETURN_DAY ? c.returnDay // plain reads; may miss a racing close
+                      : column == Column.CAR ? c.car
+                      : column == Column.CUSTOMER ? c.customer : c.days;
+            System.arraycopy(src, i, out, offset, n);
+            from += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    void copyCents(int from, int length, long[] out, int offset) {
+        while (length > 0) {
+            Chunk c = at(from);
+            int i = from & CHUNK_MASK;
+            int n = Math.min(length, CHUNK_SIZE - i);
+            System.arraycopy(c.cents, i, out, offset, n);
+            from += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    enum Column { RENTAL_DAY, RETURN_DAY, CAR, CUSTOMER, DAYS }
+
+    FleetIndex getFleet() { return fleet; }
+    CustomerDirectory getCustomers() { return customers; }
+
+    @Override
+    public RentalTransaction get(int index) {
+        if (index < 0 || index >= published.get()) throw new IndexOutOfBoundsException("Index: " + index);
+        return new RentalTransaction(this, index);
+    }
+
+    @Override
+    public int size() { return published.get(); }
+}
+
+// Dense indexes for customers, so the transaction columns can refer to them by int
+class CustomerDirectory {
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private volatile Customer[][] pages = new Customer[0][];
+    private volatile int size;
+
+    public synchronized int add(Customer customer) {
+        int index = size;
+        int page = index >>> PAGE_BITS;
+        if (page >= pages.length) {
+            Customer[][] grown = Arrays.copyOf(pages, page + 1);
+            grown[page] = new Customer[PAGE_SIZE];
+            pages = grown;
+        }
+        pages[page][index & (PAGE_SIZE - 1)] = customer;
+        customer.assignIndex(index);
+        size = index + 1; // publishes the writes above to readers
+        return index;
+    }
+
+    public Customer get(int index) {
+        if (index < 0 || index >= size) return null;
+        return pages[index >>> PAGE_BITS][index & (PAGE_SIZE - 1)];
+    }
+
+    public int size() { return size; }
+}
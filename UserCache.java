@@ -0,0 +1,150 @@
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+
+// Read-through cache of user rows (as DBHelper.userRow builds them), keyed by id and bounded
+// to `maxEntries` with least-recently-used eviction. Rows come in from page fetches, from
+// searches and from new registrations, which are built from the id insertUser returns, so
+// saving or looking up a user costs no extra read of the table. Shared by the EDT, the
+// database thread and the search thread.
+//
+// main() is a consistency check against a real database:
+//   java -ea -cp out:<jdbc driver> -Ddb.url=... UserCache [inserts]
+class UserCache {
+    private final LinkedHashMap<Long, Object[]> rows;
+    private long hits, misses;
+
+    UserCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries: " + maxEntries);
+        this.rows = new LinkedHashMap<Long, Object[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Object[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized void put(Object[] row) {
+        rows.put((Long) row[0], row);
+    }
+
+    synchronized void putAll(Collection<Object[]> fetched) {
+        for (Object[] row : fetched) rows.put((Long) row[0], row);
+    }
+
+    // The rows for `ids`, in the same order, skipping ids that don't exist; only the ones not
+    // cached are read, in one query
+    List<Object[]> get(long[] ids) throws SQLException {
+        Object[][] found = new Object[ids.length][];
+        long[] missing = new long[ids.length];
+        int m = 0;
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                found[i] = rows.get(ids[i]);
+                if (found[i] == null) missing[m++] = ids[i];
+            }
+            hits += ids.length - m;
+            misses += m;
+        }
+        if (m > 0) {
+            List<Object[]> loaded = DBHelper.findUsers(Arrays.copyOf(missing, m));
+            putAll(loaded);
+            Map<Long, Object[]> byId = new HashMap<>();
+            for (Object[] row : loaded) byId.put((Long) row[0], row);
+            for (int i = 0; i < ids.length; i++) if (found[i] == null) found[i] = byId.get(ids[i]);
+        }
+        List<Object[]> result = new ArrayList<>(ids.length);
+        for (Object[] row : found) if (row != null) result.add(row);
+        return result;
+    }
+
+    synchronized int size() { return rows.size(); }
+
+    synchronized long hits() { return hits; }
+
+    synchronized long misses() { return misses; }
+
+    // Registers users the way the window does (insert on the database thread, then the cache
+    // and the table model on the EDT), with page reads and cached lookups mixed in, then
+    // checks that every row the model shows and every cached row matches the database
+    public static void main(String[] args) throws Exception {
+        int inserts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        ExecutorService db = Executors.newSingleThreadExecutor();
+        UserCache cache = new UserCache(500);
+        UserTableModel[] model = new UserTableModel[1];
+        SwingUtilities.invokeAndWait(() -> {
+            model[0] = new UserTableModel(db, 100, 5, cache);
+            model[0].refresh();
+        });
+        drain(db);
+        Random random = new Random(42);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < inserts; i++) {
+            String name = "user" + random.nextInt(1_000_000), contact = "07" + random.nextInt(100_000_000);
+            String gender = random.nextBoolean() ? "Male" : "Female", address = "street " + i;
+            long id = db.submit(() -> DBHelper.insertUser(name, contact, gender, address)).get();
+            ids.add(id);
+            SwingUtilities.invokeAndWait(() -> {
+                Object[] row = DBHelper.userRow(id, name, contact, gender, address);
+                cache.put(row);
+                model[0].rowAppended(row);
+                if (random.nextInt(5) == 0) model[0].getValueAt(random.nextInt(model[0].getRowCount()), 1);
+            });
+            if (random.nextInt(10) == 0) {
+                long[] some = new long[8];
+                for (int k = 0; k < some.length; k++) some[k] = ids.get(random.nextInt(ids.size()));
+                cache.get(some);
+            }
+            if (random.nextInt(50) == 0) drain(db);
+        }
+
+        List<Object[]> expected = db.submit(() -> DBHelper.findUsers(ids.stream().mapToLong(Long::longValue).toArray())).get();
+        Map<Long, Object[]> inDb = new HashMap<>();
+        for (Object[] row : expected) inDb.put((Long) row[0], row);
+        // A page at a time, so reading the rows doesn't evict the pages being read
+        int shown = 0;
+        for (int first = 0; first < model[0].getRowCount(); first += 100) {
+            Object[][] page;
+            do {
+                drain(db);
+                page = readRows(model[0], first, Math.min(first + 100, model[0].getRowCount()));
+            } while (page == null);
+            for (Object[] row : page) {
+                Object[] dbRow = row[0] instanceof Long ? inDb.get((Long) row[0]) : null;
+                if (dbRow == null) continue; // a user from before the check, or a missing row (counted below)
+                assert Arrays.equals(row, dbRow) : "shown " + Arrays.toString(row) + ", database has " + Arrays.toString(dbRow);
+                shown++;
+            }
+        }
+        assert shown == inserts : shown + " of " + inserts + " new users shown";
+        for (Object[] row : cache.get(ids.stream().mapToLong(Long::longValue).toArray())) {
+            assert Arrays.equals(row, inDb.get((Long) row[0])) : "cached " + Arrays.toString(row);
+        }
+        System.out.printf("%,d inserts match the database; cache %,d hits, %,d misses, %,d entries%n",
+                inserts, cache.hits(), cache.misses(), cache.size());
+        db.shutdown();
+    }
+
+    // Rows [from, to) as the model shows them, or null if some are still loading
+    private static Object[][] readRows(UserTableModel model, int from, int to) throws Exception {
+        Object[][] rows = new Object[to - from][UserTableModel.COLUMNS.length];
+        boolean[] loading = new boolean[1];
+        SwingUtilities.invokeAndWait(() -> {
+            for (int r = from; r < to; r++) {
+                for (int c = 0; c < rows[r - from].length; c++) rows[r - from][c] = model.getValueAt(r, c);
+                if (rows[r - from][0] == UserTableModel.LOADING) loading[0] = true;
+            }
+        });
+        return loading[0] ? null : rows;
+    }
+
+    // Waits until the database thread and the EDT have run everything queued so far
+    private static void drain(ExecutorService db) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            db.submit(() -> { }).get();
+            SwingUtilities.invokeAndWait(() -> { });
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// In-memory prefix index over registered users: the full name, each later word of the name,
+// and the contact number, lower-cased, each pointing at the user id. Answers "starts with"
+// searches in microseconds, without a database round trip per keystroke. DBHelper.searchUsers
+// matches the same way, for searches made before the index has loaded.
+//
+// The bulk of the index is two sorted parallel arrays (term, id) built in one pass over the
+// table; a prefix search is a binary search plus a short scan. New registrations go into a
+// small concurrent sorted map that is folded into the arrays once it grows, so adding one
+// user never rebuilds the whole index.
+class UserSearchIndex {
+    private static final int MERGE_THRESHOLD = 50_000;
+
+    // Replaced as a whole so readers always see matching arrays
+    private static final class Sorted {
+        final String[] terms;
+        final long[] ids;
+
+        Sorted(String[] terms, long[] ids) {
+            this.terms = terms;
+            this.ids = ids;
+        }
+    }
+
+    private volatile Sorted sorted = new Sorted(new String[0], new long[0]);
+    private final ConcurrentSkipListMap<String, Long> recent = new ConcurrentSkipListMap<>();
+
+    // Reads every user; run off the EDT
+    static UserSearchIndex load(Connection conn) throws SQLException {
+        Entries entries = new Entries();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, name, contact FROM users")) {
+            ps.setFetchSize(10_000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    forEachTerm(rs.getString(2), rs.getString(3), term -> entries.add(term, id));
+                }
+            }
+        }
+        UserSearchIndex index = new UserSearchIndex();
+        index.setSorted(entries);
+        return index;
+    }
+
+    // (term, id) pairs collected by load, in growable parallel arrays rather than a pair
+    // object and a boxed id per term
+    private static final class Entries {
+        String[] terms = new String[1024];
+        long[] ids = new long[1024];
+        int size;
+
+        void add(String term, long id) {
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            terms[size] = term;
+            ids[size++] = id;
+        }
+    }
+
+    // Adds a user just registered
+    void add(long id, String name, String contact) {
+        forEachTerm(name, contact, term -> recent.put(term + '\0' + id, id));
+        if (recent.size() > MERGE_THRESHOLD) merge();
+    }
+
+    // Ids of up to `limit` users with a term starting with `prefix`, in term order
+    long[] search(String prefix, int limit) {
+        String p = normalize(prefix);
+        if (p.isEmpty()) return new long[0];
+        Sorted s = sorted;
+        String[] t = s.terms;
+        long[] id = s.ids;
+        LinkedHashSet<Long> found = new LinkedHashSet<>();
+        Iterator<Map.Entry<String, Long>> fresh = recent.subMap(p, p + Character.MAX_VALUE).entrySet().iterator();
+        Map.Entry<String, Long> nextFresh = fresh.hasNext() ? fresh.next() : null;
+        int i = lowerBound(t, p);
+        while (found.size() < limit) {
+            boolean baseLeft = i < t.length && t[i].startsWith(p);
+            if (!baseLeft && nextFresh == null) break;
+            if (baseLeft && (nextFresh == null || t[i].compareTo(nextFresh.getKey()) <= 0)) {
+                found.add(id[i++]);
+            } else {
+                found.add(nextFresh.getValue());
+                nextFresh = fresh.hasNext() ? fresh.next() : null;
+            }
+        }
+        long[] result = new long[found.size()];
+        int n = 0;
+        for (long v : found) result[n++] = v;
+        return result;
+    }
+
+    int size() { return sorted.terms.length + recent.size(); }
+
+    // Folds the recent additions into the sorted arrays
+    private synchronized void merge() {
+        if (recent.size() <= MERGE_THRESHOLD) return;
+        Sorted s = sorted;
+        String[] t = s.terms;
+        long[] id = s.ids;
+        List<String> keys = new ArrayList<>(recent.size());
+        List<String> freshTerms = new ArrayList<>(recent.size());
+        List<Long> freshIds = new ArrayList<>(recent.size());
+        for (Map.Entry<String, Long> e : recent.entrySet()) {
+            keys.add(e.getKey());
+            freshTerms.add(termOf(e.getKey()));
+            freshIds.add(e.getValue());
+        }
+        String[] mergedTerms = new String[t.length + keys.size()];
+        long[] mergedIds = new long[mergedTerms.length];
+        int a = 0, b = 0, n = 0;
+        while (a < t.length || b < keys.size()) {
+            if (b == keys.size() || (a < t.length && t[a].compareTo(freshTerms.get(b)) <= 0)) {
+                mergedTerms[n] = t[a];
+                mergedIds[n++] = id[a++];
+            } else {
+                mergedTerms[n] = freshTerms.get(b);
+                mergedIds[n++] = freshIds.get(b++);
+            }
+        }
+        sorted = new Sorted(mergedTerms, mergedIds);
+        for (String key : keys) recent.remove(key);
+    }
+
+    // Sorts by (term, id) through a permutation of positions, then lays the arrays out in
+    // that order
+    private void setSorted(Entries e) {
+        int[] order = sortedOrder(e.terms, e.ids, e.size);
+        String[] t = new String[e.size];
+        long[] id = new long[e.size];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = e.terms[order[i]];
+            id[i] = e.ids[order[i]];
+        }
+        sorted = new Sorted(t, id);
+    }
+
+    // Bottom-up merge sort of the positions 0..n-1 of the pairs
+    private static int[] sortedOrder(String[] terms, long[] ids, int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n - width; lo += 2 * width) {
+                int mid = lo + width, hi = Math.min(lo + 2 * width, n);
+                if (compare(terms, ids, order[mid - 1], order[mid]) <= 0) continue; // already in order
+                int a = lo, b = mid, k = lo;
+                while (a < mid && b < hi) buffer[k++] = compare(terms, ids, order[a], order[b]) <= 0 ? order[a++] : order[b++];
+                while (a < mid) buffer[k++] = order[a++];
+                while (b < hi) buffer[k++] = order[b++];
+                System.arraycopy(buffer, lo, order, lo, hi - lo);
+            }
+        }
+        return order;
+    }
+
+    private static int compare(String[] terms, long[] ids, int x, int y) {
+        int c = terms[x].compareTo(terms[y]);
+        return c != 0 ? c : Long.compare(ids[x], ids[y]);
+    }
+
+    private static String termOf(String recentKey) { return recentKey.substring(0, recentKey.lastIndexOf('\0')); }
+
+    private static int lowerBound(String[] t, String key) {
+        int lo = 0, hi = t.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (t[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static void forEachTerm(String name, String contact, java.util.function.Consumer<String> sink) {
+        String n = normalize(name);
+        if (!n.isEmpty()) {
+            sink.accept(n);
+            String[] words = n.split("\\s+");
+            for (int w = 1; w < words.length; w++) if (!words[w].isEmpty()) sink.accept(words[w]);
+        }
+        String c = normalize(contact);
+        if (!c.isEmpty()) sink.accept(c);
+    }
+
+    static String normalize(String s) {
+        return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,172 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+// Lazy table model over the users table. Only the pages the JTable asks for are fetched, on
+// the given executor, and at most `maxPages` of them are kept; rows not loaded yet show as
+// "…" until their page arrives.
+//
+// Pages are read by keyset (WHERE id > last id of the previous page ORDER BY id), so
+// scrolling down costs one indexed range read per page. Jumping far ahead first finds the
+// page's starting id with an id-only OFFSET lookup, which the primary key index answers.
+//
+// Fetched rows also go into the shared UserCache, and a new registration is appended to the
+// last page in place, so saving a user reads nothing back.
+//
+// All model state is confined to the Event Dispatch Thread; the executor only runs queries.
+class UserTableModel extends AbstractTableModel {
+    static final String[] COLUMNS = { "ID", "Name", "Gender", "Address", "Contact" };
+    static final String LOADING = "…";
+
+    private final Executor executor;
+    private final int pageSize;
+    private final int maxPages;
+    private final UserCache cache;
+
+    private int rowCount;
+    private int generation; // bumped by refresh() so stale fetches are ignored
+    private final LinkedHashMap<Integer, Object[][]> pages;
+    private final Map<Integer, Long> lastIdOfPage = new HashMap<>();
+    private final Map<Integer, Boolean> loading = new HashMap<>();
+
+    UserTableModel(Executor executor, int pageSize, int maxPages, UserCache cache) {
+        this.executor = executor;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.cache = cache;
+        this.pages = new LinkedHashMap<Integer, Object[][]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+                return size() > UserTableModel.this.maxPages;
+            }
+        };
+    }
+
+    @Override
+    public int getRowCount() { return rowCount; }
+
+    @Override
+    public int getColumnCount() { return COLUMNS.length; }
+
+    @Override
+    public String getColumnName(int column) { return COLUMNS[column]; }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / pageSize;
+        Object[][] rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return LOADING;
+        }
+        int i = row % pageSize;
+        return i < rows.length ? rows[i][column] : "";
+    }
+
+    // Drops everything and re-reads the row count; visible pages reload as they're painted
+    void refresh() {
+        int gen = ++generation;
+        pages.clear();
+        lastIdOfPage.clear();
+        loading.clear();
+        executor.execute(() -> {
+            try {
+                int count = countUsers();
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation) return;
+                    rowCount = count;
+                    fireTableDataChanged();
+                });
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    // `row` was added with the highest id (a new registration): it goes at the end of the
+    // last page if that page is loaded, otherwise it's read with the page when shown
+    void rowAppended(Object[] row) {
+        int last = rowCount;
+        rowCount++;
+        int page = last / pageSize;
+        Object[][] rows = pages.get(page);
+        if (rows != null && rows.length == last % pageSize) {
+            Object[][] grown = Arrays.copyOf(rows, rows.length + 1);
+            grown[rows.length] = row;
+            pages.put(page, grown);
+            lastIdOfPage.put(page, (Long) row[0]);
+        } else if (rows != null) {
+            pages.remove(page); // out of step with the count; read it again
+        }
+        fireTableRowsInserted(last, last);
+    }
+
+    private void requestPage(int page) {
+        if (loading.containsKey(page)) return;
+        loading.put(page, Boolean.TRUE);
+        int gen = generation;
+        Long after = page == 0 ? Long.valueOf(Long.MIN_VALUE) : lastIdOfPage.get(page - 1);
+        executor.execute(() -> {
+            Object[][] rows;
+            try {
+                rows = fetchPage(page, after);
+                cache.putAll(Arrays.asList(rows));
+            } catch (SQLException e) {
+                e.printStackTrace();
+                rows = null;
+            }
+            Object[][] fetched = rows;
+            SwingUtilities.invokeLater(() -> {
+                if (gen != generation) return;
+                loading.remove(page);
+                if (fetched == null) return;
+                pages.put(page, fetched);
+                if (fetched.length > 0) lastIdOfPage.put(page, (Long) fetched[fetched.length - 1][0]);
+                int first = page * pageSize;
+                int last = Math.min(rowCount, first + pageSize) - 1;
+                if (last >= first) fireTableRowsUpdated(first, last);
+            });
+        });
+    }
+
+    // Runs on the executor. `after` is the last id of the previous page, or null if unknown.
+    private Object[][] fetchPage(int page, Long after) throws SQLException {
+        try (Connection conn = DBHelper.getConnection()) {
+            if (after == null) after = idBefore(conn, (long) page * pageSize);
+            if (after == null) return new Object[0][];
+            try (PreparedStatement ps = conn.prepareStatement(DBHelper.SELECT_USERS_AFTER)) {
+                ps.setLong(1, after);
+                ps.setMaxRows(pageSize);
+                ps.setFetchSize(pageSize);
+                return DBHelper.readUsers(ps).toArray(new Object[0][]);
+            }
+        }
+    }
+
+    // The id just before row `offset` in id order (so the page starts after it), or null if
+    // the table has no such row
+    private static Long idBefore(Connection conn, long offset) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(DBHelper.SELECT_ID_AT)) {
+            ps.setLong(1, offset - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private static int countUsers() throws SQLException {
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement ps = conn.prepareStatement(DBHelper.COUNT_USERS);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
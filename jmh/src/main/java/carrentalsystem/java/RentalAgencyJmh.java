@@ -0,0 +1,180 @@
+package carrentalsystem.java;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// JMH benchmarks for the RentalAgency hot paths, the same ones RentalAgencySuite runs without
+// JMH. Run from the repository root; the task adds -prof gc for the per-op allocation:
+//
+//   gradle :jmh:jmh                                  // all of them, one thread
+//   gradle :jmh:jmh -PjmhArgs="-t 4 rentCar"         // four threads, one benchmark
+//   gradle :jmh:jmh -PjmhArgs="-rf csv -rff base.csv" // save a baseline
+//
+// rentCar and returnCar add rentals, so their agency is rebuilt before every iteration and
+// the history stays within one iteration's worth of the `history` parameter. The lookups run
+// against an agency built once per trial, which nothing modifies.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RentalAgencyJmh {
+    // Cars rented or returned per invocation; each thread needs that many cars of its own
+    static final int BATCH = 100;
+
+    // An agency with `history` closed rentals spread over the customers
+    @State(Scope.Benchmark)
+    public abstract static class Fleet {
+        @Param({"1000", "100000"})
+        public int fleet;
+        @Param({"10000"})
+        public int customers;
+        @Param({"0", "1000000"})
+        public long history;
+
+        RentalAgency agency;
+        String[] regNos;
+        String[] customerIds;
+
+        void build() {
+            regNos = new String[fleet];
+            for (int i = 0; i < fleet; i++) regNos[i] = RentalAgencyBenchmark.regNo(i);
+            customerIds = new String[customers];
+            for (int i = 0; i < customers; i++) customerIds[i] = RentalAgencyBenchmark.customerId(i);
+            agency = null;
+            RentalAgency a = RentalAgencyBenchmark.newAgency(fleet, customers);
+            for (long i = 0; i < history; i++) {
+                String regNo = regNos[(int) (i % fleet)];
+                a.rentCar(regNo, customerIds[(int) (i % customers)], 1);
+                a.returnCar(regNo);
+            }
+            agency = a;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shared extends Fleet {
+        @Setup(Level.Trial)
+        public void setUp() { build(); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Churn extends Fleet {
+        @Setup(Level.Iteration)
+        public void setUp() { build(); }
+    }
+
+    // Each customer has `rentalsPerCustomer` closed rentals; kept apart from Fleet so a
+    // lookup never runs over an empty history
+    @State(Scope.Benchmark)
+    public static class Histories {
+        @Param({"10", "100"})
+        public int rentalsPerCustomer;
+
+        static final int CUSTOMERS = 10_000;
+        RentalAgency agency;
+        String[] customerIds;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            customerIds = new String[CUSTOMERS];
+            for (int i = 0; i < CUSTOMERS; i++) customerIds[i] = RentalAgencyBenchmark.customerId(i);
+            agency = RentalAgencyBenchmark.newAgency(RentalAgencyBenchmark.FLEET, CUSTOMERS);
+            for (long i = 0; i < (long) CUSTOMERS * rentalsPerCustomer; i++) {
+                String regNo = RentalAgencyBenchmark.regNo((int) (i % RentalAgencyBenchmark.FLEET));
+                agency.rentCar(regNo, customerIds[(int) (i % CUSTOMERS)], 1);
+                agency.returnCar(regNo);
+            }
+        }
+    }
+
+    // The calling thread's own cars, walked BATCH at a time, and a customer of its own
+    @State(Scope.Thread)
+    public static class Slice {
+        RentalAgency agency;
+        String[] regNos;
+        String customerId;
+        int from;
+        int length;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp(Churn churn, ThreadParams thread) {
+            agency = churn.agency;
+            regNos = churn.regNos;
+            customerId = churn.customerIds[thread.getThreadIndex() % churn.customers];
+            length = churn.fleet / thread.getThreadCount();
+            if (length < BATCH) throw new IllegalStateException("fewer than " + BATCH + " cars per thread");
+            from = thread.getThreadIndex() * length;
+            next = 0;
+        }
+
+        String car(int i) { return regNos[from + (next + i) % length]; }
+
+        void advance() { next = (next + BATCH) % length; }
+    }
+
+    // Cars of the slice that are available when the invocation starts
+    @State(Scope.Thread)
+    public static class ToRent extends Slice {
+        @TearDown(Level.Invocation)
+        public void returnBatch() {
+            for (int i = 0; i < BATCH; i++) agency.returnCar(car(i));
+            advance();
+        }
+    }
+
+    // Cars of the slice that are rented when the invocation starts
+    @State(Scope.Thread)
+    public static class ToReturn extends Slice {
+        @Setup(Level.Invocation)
+        public void rentBatch() {
+            for (int i = 0; i < BATCH; i++) agency.rentCar(car(i), customerId, 1);
+        }
+
+        @TearDown(Level.Invocation)
+        public void next() { advance(); }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int rentCar(ToRent s) {
+        int rented = 0;
+        for (int i = 0; i < BATCH; i++) if (s.agency.rentCar(s.car(i), s.customerId, 1) != null) rented++;
+        return rented;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int returnCar(ToReturn s) {
+        int returned = 0;
+        for (int i = 0; i < BATCH; i++) if (s.agency.returnCar(s.car(i))) returned++;
+        return returned;
+    }
+
+    @Benchmark
+    public List<Car> getAvailableCars(Shared s) {
+        return s.agency.getAvailableCars();
+    }
+
+    @Benchmark
+    public Customer findCustomer(Shared s, Cursor c) {
+        return s.agency.findCustomer(s.customerIds[c.next++ % s.customers]);
+    }
+
+    // One customer's whole history per op
+    @Benchmark
+    public long rentalHistory(Histories h, Cursor c) {
+        long days = 0;
+        Customer customer = h.agency.findCustomer(h.customerIds[c.next++ % Histories.CUSTOMERS]);
+        for (RentalTransaction t : customer.getRentalHistory()) days += t.getRentalDays();
+        return days;
+    }
+}